@@ -0,0 +1,35 @@
+package com.kas.androidsqlite.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+
+import com.kas.androidsqlite.DatabaseContext;
+import com.kas.androidsqlite.jdbc.JdbcBackend;
+
+/**
+ * Opens a DatabaseContext on a desktop SQLite file through the JDBC driver, so that the benchmarks run on a plain JVM.
+ */
+final class BenchmarkDatabase {
+
+	private BenchmarkDatabase() {
+	}
+
+	/**
+	 * Creates a new database file with the tables of the synthetic graph and opens a context on it.
+	 */
+	static DatabaseContext create(File file) throws IOException, SQLException {
+		if (file.exists() && !file.delete()) throw new IOException("Cannot delete " + file);
+		Graphs.createSchema(file.getPath());
+		return open(file);
+	}
+
+	/**
+	 * Opens a context on an existing database file, kept open until the context is closed.
+	 */
+	static DatabaseContext open(File file) {
+		DatabaseContext context = new DatabaseContext(new JdbcBackend(file), false);
+		context.open();
+		return context;
+	}
+}
@@ -0,0 +1,31 @@
+package com.kas.androidsqlite.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the allocation profiler (gc.alloc.rate.norm is the bytes allocated per operation). Takes
+ * the usual JMH command line options, for example -p depth=4, a benchmark name pattern, or -rf json -rff file to keep
+ * the results for comparing before and after a change.
+ * @ForExample <pre>
+ * <code>
+ * java -jar build/libs/benchmarks.jar -rf json -rff before.json
+ * </code>
+ * </pre>
+ */
+public final class BenchmarkMain {
+
+	private BenchmarkMain() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		new Runner(new OptionsBuilder()
+				.parent(commandLine)
+				.include(CrudBenchmark.class.getName())
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+}
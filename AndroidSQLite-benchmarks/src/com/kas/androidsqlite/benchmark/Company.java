@@ -0,0 +1,19 @@
+package com.kas.androidsqlite.benchmark;
+
+import java.util.List;
+
+import com.kas.androidsqlite.Entity;
+
+/**
+ * Root of the synthetic graph: Company, its Departments, their Employees and their Meetings.
+ */
+@Entity
+public class Company {
+	long id;
+	String name;
+	int founded;
+	List<Department> departments;
+
+	public Company() {
+	}
+}
@@ -0,0 +1,137 @@
+package com.kas.androidsqlite.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kas.androidsqlite.DatabaseContext;
+import com.kas.androidsqlite.Query;
+
+/**
+ * Measures the CRUD operations of DatabaseContext on a database seeded with rows graphs of the given width and depth.
+ * Every benchmark is measured both as throughput and as sampled time, which gives the latency percentiles. The
+ * entities are mapped by the generated mappers when the benchmarks are compiled with the entity processor, and by
+ * reflection when they are not, so building both ways compares the two.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CrudBenchmark {
+
+	/** number of companies the database is seeded with */
+	@Param({ "100", "1000" })
+	int rows;
+
+	/** number of children of every entity in the graph */
+	@Param({ "4" })
+	int width;
+
+	/** levels of the graph, 1 for companies only up to 4 for companies, departments, employees and meetings */
+	@Param({ "1", "3" })
+	int depth;
+
+	private File file;
+	private DatabaseContext context;
+	private Graphs graphs;
+	private final List<Long> ids = new ArrayList<Long>();
+	private long lastSeededId;
+	private final Random random = new Random(7);
+
+	@Setup(Level.Trial)
+	public void seed() throws Exception {
+		file = File.createTempFile("crud-benchmark", ".db");
+		context = BenchmarkDatabase.create(file);
+		graphs = new Graphs(width, depth);
+		for (Company company : context.addAll(graphs.companies(rows))) {
+			ids.add(Long.valueOf(company.id));
+			lastSeededId = Math.max(lastSeededId, company.id);
+		}
+	}
+
+	/**
+	 * Deletes the graphs added during the iteration so that every iteration starts from the seeded database.
+	 */
+	@TearDown(Level.Iteration)
+	public void reset() {
+		context.deleteWhere(Company.class, Query.where("id").gt(Long.valueOf(lastSeededId)));
+	}
+
+	@TearDown(Level.Trial)
+	public void close() {
+		context.close();
+		file.delete();
+	}
+
+	@Benchmark
+	public Company add() {
+		return context.add(graphs.company());
+	}
+
+	@Benchmark
+	public List<Company> addAll() {
+		return context.addAll(graphs.companies(width));
+	}
+
+	@Benchmark
+	public List<Company> getAll() {
+		return context.getAll(new Company(), false);
+	}
+
+	/**
+	 * Loads every company with all its list fields, at every level.
+	 */
+	@Benchmark
+	public List<Company> getAllWithListFields() {
+		return context.getAll(new Company(), true);
+	}
+
+	@Benchmark
+	public Company find() {
+		return context.find(seeded(), false);
+	}
+
+	@Benchmark
+	public Company findWithListFields() {
+		return context.find(seeded(), true);
+	}
+
+	@Benchmark
+	public Company update() {
+		Company company = context.find(seeded(), false);
+		company.name = "Renamed " + random.nextInt();
+		return context.update(company, false);
+	}
+
+	/**
+	 * Adds a graph and deletes it, to be compared with add.
+	 */
+	@Benchmark
+	public int addAndDelete() {
+		return context.delete(context.add(graphs.company()));
+	}
+
+	private Company seeded() {
+		Company company = new Company();
+		company.id = ids.get(random.nextInt(ids.size())).longValue();
+		return company;
+	}
+}
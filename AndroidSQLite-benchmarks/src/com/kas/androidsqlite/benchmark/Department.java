@@ -0,0 +1,18 @@
+package com.kas.androidsqlite.benchmark;
+
+import java.util.List;
+
+import com.kas.androidsqlite.Entity;
+
+@Entity
+public class Department {
+	long id;
+	/** the id of the company, the column is named after the parent table */
+	long Company;
+	String name;
+	double budget;
+	List<Employee> employees;
+
+	public Department() {
+	}
+}
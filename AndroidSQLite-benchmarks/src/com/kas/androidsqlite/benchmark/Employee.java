@@ -0,0 +1,20 @@
+package com.kas.androidsqlite.benchmark;
+
+import java.util.Date;
+import java.util.List;
+
+import com.kas.androidsqlite.Entity;
+
+@Entity
+public class Employee {
+	long id;
+	long Department;
+	String name;
+	int age;
+	boolean active;
+	Date hired;
+	List<Meeting> meetings;
+
+	public Employee() {
+	}
+}
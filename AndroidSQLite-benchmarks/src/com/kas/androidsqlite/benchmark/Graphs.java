@@ -0,0 +1,116 @@
+package com.kas.androidsqlite.benchmark;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds the synthetic entity graphs the benchmarks write and read. A graph of depth 1 is a Company alone, every
+ * further level adds width children to each entity of the level above: Departments, then Employees, then Meetings.
+ */
+final class Graphs {
+
+	static final int MAX_DEPTH = 4;
+
+	private static final String[] SCHEMA = {
+		"CREATE TABLE Company (id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT, founded INTEGER)",
+		"CREATE TABLE Department (id INTEGER PRIMARY KEY AUTOINCREMENT, Company INTEGER, name TEXT, budget REAL)",
+		"CREATE TABLE Employee (id INTEGER PRIMARY KEY AUTOINCREMENT, Department INTEGER, name TEXT, age INTEGER, active TEXT, hired INTEGER)",
+		"CREATE TABLE Meeting (id INTEGER PRIMARY KEY AUTOINCREMENT, Employee INTEGER, subject TEXT, time INTEGER)",
+		// the columns the list fields are loaded by
+		"CREATE INDEX Department_Company ON Department (Company)",
+		"CREATE INDEX Employee_Department ON Employee (Department)",
+		"CREATE INDEX Meeting_Employee ON Meeting (Employee)",
+	};
+
+	private final int width;
+	private final int depth;
+	private final Random random = new Random(42);
+	private int sequence;
+
+	Graphs(int width, int depth) {
+		if (depth < 1 || depth > MAX_DEPTH) throw new IllegalArgumentException("depth must be between 1 and " + MAX_DEPTH);
+		this.width = width;
+		this.depth = depth;
+	}
+
+	/**
+	 * Creates an empty database file with the tables of the graph.
+	 */
+	static void createSchema(String path) throws SQLException {
+		Connection connection = DriverManager.getConnection("jdbc:sqlite:" + path);
+		try {
+			Statement statement = connection.createStatement();
+			try {
+				for (String sql : SCHEMA) {
+					statement.executeUpdate(sql);
+				}
+			} finally {
+				statement.close();
+			}
+		} finally {
+			connection.close();
+		}
+	}
+
+	List<Company> companies(int count) {
+		List<Company> companies = new ArrayList<Company>(count);
+		for (int i = 0; i < count; i++) {
+			companies.add(company());
+		}
+		return companies;
+	}
+
+	Company company() {
+		Company company = new Company();
+		company.name = "Company " + ++sequence;
+		company.founded = 1900 + random.nextInt(120);
+		if (depth > 1) {
+			company.departments = new ArrayList<Department>(width);
+			for (int i = 0; i < width; i++) {
+				company.departments.add(department());
+			}
+		}
+		return company;
+	}
+
+	private Department department() {
+		Department department = new Department();
+		department.name = "Department " + ++sequence;
+		department.budget = random.nextDouble() * 1000000;
+		if (depth > 2) {
+			department.employees = new ArrayList<Employee>(width);
+			for (int i = 0; i < width; i++) {
+				department.employees.add(employee());
+			}
+		}
+		return department;
+	}
+
+	private Employee employee() {
+		Employee employee = new Employee();
+		employee.name = "Employee " + ++sequence;
+		employee.age = 20 + random.nextInt(45);
+		employee.active = random.nextBoolean();
+		employee.hired = new Date(1000000000000L + random.nextInt(Integer.MAX_VALUE));
+		if (depth > 3) {
+			employee.meetings = new ArrayList<Meeting>(width);
+			for (int i = 0; i < width; i++) {
+				employee.meetings.add(meeting());
+			}
+		}
+		return employee;
+	}
+
+	private Meeting meeting() {
+		Meeting meeting = new Meeting();
+		meeting.subject = "Meeting " + ++sequence;
+		meeting.time = 1000000000000L + random.nextInt(Integer.MAX_VALUE);
+		return meeting;
+	}
+}
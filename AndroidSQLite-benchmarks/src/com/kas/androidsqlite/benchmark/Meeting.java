@@ -0,0 +1,14 @@
+package com.kas.androidsqlite.benchmark;
+
+import com.kas.androidsqlite.Entity;
+
+@Entity
+public class Meeting {
+	long id;
+	long Employee;
+	String subject;
+	long time;
+
+	public Meeting() {
+	}
+}
@@ -0,0 +1,71 @@
+package com.kas.androidsqlite.jdbc;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import com.kas.androidsqlite.SqlBackend;
+import com.kas.androidsqlite.SqlConnection;
+
+/**
+ * Runs a DatabaseContext on a SQLite file through JDBC, for example with the xerial sqlite-jdbc driver on a desktop or
+ * server JVM, without android.jar: only the constructors of DatabaseContext that install the database from the assets
+ * of an app need it. Safe to use from several threads: a transaction holds its connection until
+ * it ends, as on Android, and the readers of {@link com.kas.androidsqlite.DatabaseContext#enableWriteAheadLogging(int)}
+ * each get a connection of their own.
+ * @ForExample <pre>
+ * <code>
+ * DatabaseContext dc = new DatabaseContext(new JdbcBackend(new File("data.db")), true);
+ * List[Employee] employees = dc.getAll(new Employee(), true);
+ * </code>
+ * </pre>
+ */
+public class JdbcBackend implements SqlBackend {
+
+	/** SQLITE_OPEN_READONLY, passed to the driver as its open_mode */
+	private static final String OPEN_READ_ONLY = "1";
+
+	private final String url;
+
+	/**
+	 * @param file the SQLite database file, opened with the jdbc:sqlite: driver
+	 */
+	public JdbcBackend(File file) {
+		this("jdbc:sqlite:" + file.getPath());
+	}
+
+	/**
+	 * @param url the JDBC url of a SQLite database
+	 */
+	public JdbcBackend(String url) {
+		this.url = url;
+	}
+
+	@Override
+	public SqlConnection open() {
+		try {
+			return new JdbcConnection(DriverManager.getConnection(url));
+		} catch (SQLException e) {
+			throw new JdbcException("Cannot open " + url, e);
+		}
+	}
+
+	@Override
+	public SqlConnection openReadOnly() {
+		Properties properties = new Properties();
+		properties.setProperty("open_mode", OPEN_READ_ONLY);
+		try {
+			Connection connection = DriverManager.getConnection(url, properties);
+			connection.setReadOnly(true);
+			return new JdbcConnection(connection);
+		} catch (SQLException e) {
+			throw new JdbcException("Cannot open " + url, e);
+		}
+	}
+
+	@Override
+	public void close() {
+	}
+}
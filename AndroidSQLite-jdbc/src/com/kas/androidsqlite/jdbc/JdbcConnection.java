@@ -0,0 +1,224 @@
+package com.kas.androidsqlite.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.kas.androidsqlite.SqlConnection;
+import com.kas.androidsqlite.SqlCursor;
+import com.kas.androidsqlite.SqlStatement;
+
+/**
+ * A JDBC connection with the transactions of SQLiteDatabase: they can be nested, and the outermost one is rolled back
+ * if any of them ends without being marked successful. As with SQLiteDatabase, a transaction belongs to the thread
+ * that began it, and the other threads wait to run anything on the connection until it ends, so they never see its
+ * uncommitted rows. Without write-ahead logging the reads of every thread share this connection; with it they run on
+ * their own read-only connections.
+ */
+final class JdbcConnection implements SqlConnection {
+
+	private final Connection connection;
+	/** held by the thread with the open transaction for as long as it is open, and briefly by every statement */
+	private final ReentrantLock lock = new ReentrantLock();
+	/** SELECT last_insert_rowid(), compiled once */
+	private PreparedStatement lastInsertRowId;
+	private int depth;
+	private boolean successful;
+	private boolean failed;
+	private Boolean upsert;
+
+	JdbcConnection(Connection connection) {
+		this.connection = connection;
+	}
+
+	@Override
+	public SqlCursor query(String sql, String[] args) {
+		// the driver steps to the first row when it executes the query
+		acquire();
+		try {
+			PreparedStatement statement = connection.prepareStatement(sql);
+			try {
+				if (args != null) {
+					for (int i = 0; i < args.length; i++) {
+						statement.setString(i + 1, args[i]);
+					}
+				}
+				return new JdbcCursor(this, statement, statement.executeQuery());
+			} catch (SQLException e) {
+				statement.close();
+				throw e;
+			}
+		} catch (SQLException e) {
+			throw new JdbcException(sql, e);
+		} finally {
+			release();
+		}
+	}
+
+	@Override
+	public SqlStatement compile(String sql) {
+		try {
+			return new JdbcStatement(this, connection.prepareStatement(sql), sql);
+		} catch (SQLException e) {
+			throw new JdbcException(sql, e);
+		}
+	}
+
+	@Override
+	public void execute(String sql) {
+		acquire();
+		try {
+			Statement statement = connection.createStatement();
+			try {
+				statement.execute(sql);
+			} finally {
+				statement.close();
+			}
+		} catch (SQLException e) {
+			throw new JdbcException(sql, e);
+		} finally {
+			release();
+		}
+	}
+
+	/**
+	 * Waits for the transaction of another thread to end. Held once per transaction level, released by endTransaction.
+	 */
+	@Override
+	public void beginTransaction() {
+		lock.lock();
+		try {
+			if (depth == 0) {
+				connection.setAutoCommit(false);
+				failed = false;
+			}
+			depth++;
+			successful = false;
+		} catch (SQLException e) {
+			lock.unlock();
+			throw new JdbcException("BEGIN", e);
+		}
+	}
+
+	@Override
+	public void setTransactionSuccessful() {
+		if (!inTransaction()) throw new IllegalStateException("No transaction is in progress");
+		successful = true;
+	}
+
+	@Override
+	public void endTransaction() {
+		if (!inTransaction()) throw new IllegalStateException("No transaction is in progress");
+		try {
+			if (!successful) failed = true;
+			successful = false;
+			if (--depth > 0) return;
+			try {
+				if (failed) connection.rollback();
+				else connection.commit();
+			} catch (SQLException e) {
+				throw new JdbcException(failed ? "ROLLBACK" : "COMMIT", e);
+			} finally {
+				try {
+					connection.setAutoCommit(true);
+				} catch (SQLException e) {}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return returns true if the current thread has a transaction open, like SQLiteDatabase.inTransaction
+	 */
+	@Override
+	public boolean inTransaction() {
+		return lock.isHeldByCurrentThread() && depth > 0;
+	}
+
+	@Override
+	public boolean enableWriteAheadLogging() {
+		if (inTransaction()) return false;
+		return "wal".equalsIgnoreCase(queryString("PRAGMA journal_mode=WAL"));
+	}
+
+	@Override
+	public void disableWriteAheadLogging() {
+		queryString("PRAGMA journal_mode=DELETE");
+	}
+
+	/**
+	 * ON CONFLICT DO UPDATE came with SQLite 3.24.
+	 */
+	@Override
+	public synchronized boolean supportsUpsert() {
+		if (upsert == null) {
+			String[] version = queryString("SELECT sqlite_version()").split("\\.");
+			int major = Integer.parseInt(version[0]);
+			int minor = version.length > 1 ? Integer.parseInt(version[1]) : 0;
+			upsert = Boolean.valueOf(major > 3 || (major == 3 && minor >= 24));
+		}
+		return upsert.booleanValue();
+	}
+
+	@Override
+	public boolean isOpen() {
+		try {
+			return !connection.isClosed();
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	@Override
+	public void close() {
+		try {
+			if (lastInsertRowId != null) lastInsertRowId.close();
+			lastInsertRowId = null;
+			connection.close();
+		} catch (SQLException e) {
+			throw new JdbcException("Cannot close the connection", e);
+		}
+	}
+
+	/**
+	 * Returns the row id of the last insert on this connection. Must be called under the lock.
+	 */
+	long lastInsertRowId() throws SQLException {
+		if (lastInsertRowId == null) lastInsertRowId = connection.prepareStatement("SELECT last_insert_rowid()");
+		ResultSet result = lastInsertRowId.executeQuery();
+		try {
+			return result.next() ? result.getLong(1) : -1;
+		} finally {
+			result.close();
+		}
+	}
+
+	void acquire() {
+		lock.lock();
+	}
+
+	void release() {
+		lock.unlock();
+	}
+
+	private String queryString(String sql) {
+		acquire();
+		try {
+			Statement statement = connection.createStatement();
+			try {
+				ResultSet result = statement.executeQuery(sql);
+				return result.next() ? result.getString(1) : null;
+			} finally {
+				statement.close();
+			}
+		} catch (SQLException e) {
+			throw new JdbcException(sql, e);
+		} finally {
+			release();
+		}
+	}
+}
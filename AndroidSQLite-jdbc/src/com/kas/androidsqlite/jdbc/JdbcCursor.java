@@ -0,0 +1,152 @@
+package com.kas.androidsqlite.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import com.kas.androidsqlite.SqlCursor;
+
+/**
+ * The rows of a JDBC result set, with the 0-based column indexes of a Cursor. Closing it closes its statement. Each
+ * step to the next row waits while another thread has a transaction open on the connection, so that it never reads
+ * what that transaction has not committed.
+ */
+final class JdbcCursor implements SqlCursor {
+
+	private final JdbcConnection connection;
+	private final Statement statement;
+	private final ResultSet result;
+	private final String[] columns;
+
+	JdbcCursor(JdbcConnection connection, Statement statement, ResultSet result) throws SQLException {
+		this.connection = connection;
+		this.statement = statement;
+		this.result = result;
+		ResultSetMetaData metadata = result.getMetaData();
+		columns = new String[metadata.getColumnCount()];
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = metadata.getColumnLabel(i + 1);
+		}
+	}
+
+	@Override
+	public boolean moveToNext() {
+		connection.acquire();
+		try {
+			return result.next();
+		} catch (SQLException e) {
+			throw new JdbcException("Cannot read the next row", e);
+		} finally {
+			connection.release();
+		}
+	}
+
+	@Override
+	public int getColumnIndex(String name) {
+		for (int i = 0; i < columns.length; i++) {
+			if (columns[i].equalsIgnoreCase(name)) return i;
+		}
+		return -1;
+	}
+
+	@Override
+	public boolean isNull(int index) {
+		try {
+			return result.getObject(index + 1) == null;
+		} catch (SQLException e) {
+			throw new JdbcException(columns[index], e);
+		}
+	}
+
+	@Override
+	public String getString(int index) {
+		try {
+			return result.getString(index + 1);
+		} catch (SQLException e) {
+			throw new JdbcException(columns[index], e);
+		}
+	}
+
+	@Override
+	public int getInt(int index) {
+		try {
+			return result.getInt(index + 1);
+		} catch (SQLException e) {
+			throw new JdbcException(columns[index], e);
+		}
+	}
+
+	@Override
+	public long getLong(int index) {
+		try {
+			return result.getLong(index + 1);
+		} catch (SQLException e) {
+			throw new JdbcException(columns[index], e);
+		}
+	}
+
+	@Override
+	public short getShort(int index) {
+		try {
+			return result.getShort(index + 1);
+		} catch (SQLException e) {
+			throw new JdbcException(columns[index], e);
+		}
+	}
+
+	@Override
+	public float getFloat(int index) {
+		try {
+			return result.getFloat(index + 1);
+		} catch (SQLException e) {
+			throw new JdbcException(columns[index], e);
+		}
+	}
+
+	@Override
+	public double getDouble(int index) {
+		try {
+			return result.getDouble(index + 1);
+		} catch (SQLException e) {
+			throw new JdbcException(columns[index], e);
+		}
+	}
+
+	@Override
+	public byte[] getBlob(int index) {
+		try {
+			return result.getBytes(index + 1);
+		} catch (SQLException e) {
+			throw new JdbcException(columns[index], e);
+		}
+	}
+
+	/**
+	 * Tells the type from the value the driver returns, which follows the storage class of the value in the row.
+	 */
+	@Override
+	public int getType(int index) {
+		Object value;
+		try {
+			value = result.getObject(index + 1);
+		} catch (SQLException e) {
+			throw new JdbcException(columns[index], e);
+		}
+		if (value == null) return FIELD_TYPE_NULL;
+		if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) return FIELD_TYPE_INTEGER;
+		if (value instanceof Double || value instanceof Float) return FIELD_TYPE_FLOAT;
+		if (value instanceof byte[]) return FIELD_TYPE_BLOB;
+		if (value instanceof String) return FIELD_TYPE_STRING;
+		return FIELD_TYPE_UNKNOWN;
+	}
+
+	@Override
+	public void close() {
+		try {
+			statement.close();
+		} catch (SQLException e) {
+			throw new JdbcException("Cannot close the cursor", e);
+		}
+	}
+}
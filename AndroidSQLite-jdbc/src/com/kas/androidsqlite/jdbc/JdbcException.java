@@ -0,0 +1,15 @@
+package com.kas.androidsqlite.jdbc;
+
+import java.sql.SQLException;
+
+/**
+ * A SQLException of the JDBC driver, unchecked like the exceptions of android.database.sqlite.
+ */
+public class JdbcException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public JdbcException(String message, SQLException cause) {
+		super(message, cause);
+	}
+}
@@ -0,0 +1,140 @@
+package com.kas.androidsqlite.jdbc;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import com.kas.androidsqlite.SqlStatement;
+
+final class JdbcStatement implements SqlStatement {
+
+	private final JdbcConnection connection;
+	private final PreparedStatement statement;
+	private final String sql;
+
+	JdbcStatement(JdbcConnection connection, PreparedStatement statement, String sql) {
+		this.connection = connection;
+		this.statement = statement;
+		this.sql = sql;
+	}
+
+	@Override
+	public void bindNull(int index) {
+		try {
+			statement.setNull(index, Types.NULL);
+		} catch (SQLException e) {
+			throw new JdbcException(sql, e);
+		}
+	}
+
+	@Override
+	public void bindLong(int index, long value) {
+		try {
+			statement.setLong(index, value);
+		} catch (SQLException e) {
+			throw new JdbcException(sql, e);
+		}
+	}
+
+	@Override
+	public void bindDouble(int index, double value) {
+		try {
+			statement.setDouble(index, value);
+		} catch (SQLException e) {
+			throw new JdbcException(sql, e);
+		}
+	}
+
+	@Override
+	public void bindString(int index, String value) {
+		try {
+			statement.setString(index, value);
+		} catch (SQLException e) {
+			throw new JdbcException(sql, e);
+		}
+	}
+
+	@Override
+	public void bindBlob(int index, byte[] value) {
+		try {
+			statement.setBytes(index, value);
+		} catch (SQLException e) {
+			throw new JdbcException(sql, e);
+		}
+	}
+
+	@Override
+	public void clearBindings() {
+		try {
+			statement.clearParameters();
+		} catch (SQLException e) {
+			throw new JdbcException(sql, e);
+		}
+	}
+
+	@Override
+	public void execute() {
+		connection.acquire();
+		try {
+			statement.execute();
+		} catch (SQLException e) {
+			throw new JdbcException(sql, e);
+		} finally {
+			connection.release();
+		}
+	}
+
+	@Override
+	public long executeInsert() {
+		// under the lock so that no insert of another thread comes between the two
+		connection.acquire();
+		try {
+			if (statement.executeUpdate() == 0) return -1;
+			return connection.lastInsertRowId();
+		} catch (SQLException e) {
+			throw new JdbcException(sql, e);
+		} finally {
+			connection.release();
+		}
+	}
+
+	@Override
+	public int executeUpdateDelete() {
+		connection.acquire();
+		try {
+			return statement.executeUpdate();
+		} catch (SQLException e) {
+			throw new JdbcException(sql, e);
+		} finally {
+			connection.release();
+		}
+	}
+
+	@Override
+	public long simpleQueryForLong() {
+		connection.acquire();
+		try {
+			ResultSet result = statement.executeQuery();
+			try {
+				if (!result.next()) throw new IllegalStateException("The query returned no row: " + sql);
+				return result.getLong(1);
+			} finally {
+				result.close();
+			}
+		} catch (SQLException e) {
+			throw new JdbcException(sql, e);
+		} finally {
+			connection.release();
+		}
+	}
+
+	@Override
+	public void close() {
+		try {
+			statement.close();
+		} catch (SQLException e) {
+			throw new JdbcException(sql, e);
+		}
+	}
+}
@@ -0,0 +1,265 @@
+package com.kas.androidsqlite.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates an EntityMapper for every class marked with com.kas.androidsqlite.Entity, so that the entity is mapped
+ * with plain field access instead of reflection. The mapper of Employee is Employee_Mapper, in the same package, and
+ * the one of a nested class Outer.Inner is Outer_Inner_Mapper. The mapped fields must not be private and the class needs
+ * a no-arg constructor that is not private, otherwise an error is reported on the class.
+ * The annotations are looked up by name so the processor does not depend on the library.
+ */
+public class EntityProcessor extends AbstractProcessor {
+
+	private static final String ENTITY = "com.kas.androidsqlite.Entity";
+
+	@Override
+	public Set<String> getSupportedAnnotationTypes() {
+		return Collections.singleton(ENTITY);
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		TypeElement entity = processingEnv.getElementUtils().getTypeElement(ENTITY);
+		if (entity == null) return false;
+		for (Element element : roundEnv.getElementsAnnotatedWith(entity)) {
+			if (element.getKind() != ElementKind.CLASS) {
+				error(element, "@Entity can only be put on a class");
+				continue;
+			}
+			TypeElement type = (TypeElement) element;
+			List<VariableElement> fields = fieldsOf(type);
+			if (fields == null || !canCreate(type)) continue;
+			try {
+				write(type, fields);
+			} catch (IOException e) {
+				error(type, "Cannot write the mapper of " + type.getSimpleName() + ": " + e.getMessage());
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the scalar fields of the class, the ones the library maps to columns, or null if one of them can't be
+	 * accessed from the mapper.
+	 */
+	private List<VariableElement> fieldsOf(TypeElement type) {
+		Types types = processingEnv.getTypeUtils();
+		TypeMirror collection = types.erasure(processingEnv.getElementUtils().getTypeElement("java.util.Collection").asType());
+		List<VariableElement> fields = new ArrayList<VariableElement>();
+		boolean accessible = true;
+		for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+			if (field.getModifiers().contains(Modifier.STATIC)) continue;
+			// list fields are loaded by the library itself
+			if (types.isAssignable(types.erasure(field.asType()), collection)) continue;
+			if (field.getModifiers().contains(Modifier.PRIVATE)) {
+				error(field, "A field of an @Entity must not be private to be mapped without reflection");
+				accessible = false;
+			} else if (field.getModifiers().contains(Modifier.FINAL)) {
+				error(field, "A field of an @Entity must not be final");
+				accessible = false;
+			}
+			fields.add(field);
+		}
+		return accessible ? fields : null;
+	}
+
+	private boolean canCreate(TypeElement type) {
+		if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+			error(type, "An @Entity must not be abstract");
+			return false;
+		}
+		for (Element enclosing = type; enclosing instanceof TypeElement; enclosing = enclosing.getEnclosingElement()) {
+			TypeElement nested = (TypeElement) enclosing;
+			if (nested.getModifiers().contains(Modifier.PRIVATE)) {
+				error(type, "An @Entity must not be private");
+				return false;
+			}
+			if (nested.getNestingKind() == NestingKind.MEMBER && !nested.getModifiers().contains(Modifier.STATIC)) {
+				error(type, "A nested @Entity must be static");
+				return false;
+			}
+		}
+		for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+			if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) return true;
+		}
+		error(type, "An @Entity needs a no-arg constructor that is not private");
+		return false;
+	}
+
+	private void write(TypeElement type, List<VariableElement> fields) throws IOException {
+		Types types = processingEnv.getTypeUtils();
+		PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+		String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+		String entity = types.erasure(type.asType()).toString();
+		String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+		String mapper = binaryName.substring(packageName.length() == 0 ? 0 : packageName.length() + 1).replace('$', '_') + "_Mapper";
+
+		PrintWriter out = new PrintWriter(processingEnv.getFiler().createSourceFile(
+				packageName.length() == 0 ? mapper : packageName + "." + mapper, type).openWriter());
+		try {
+			if (packageName.length() > 0) out.println("package " + packageName + ";");
+			out.println();
+			out.println("import com.kas.androidsqlite.EntityMapper;");
+			out.println("import com.kas.androidsqlite.MapperSupport;");
+			out.println("import com.kas.androidsqlite.SqlCursor;");
+			out.println();
+			out.println("/**");
+			out.println(" * Maps " + type.getSimpleName() + " without reflection. Generated from the class, do not edit.");
+			out.println(" */");
+			out.println("@SuppressWarnings({ \"rawtypes\", \"unchecked\" })");
+			out.println("public final class " + mapper + " implements EntityMapper<" + entity + "> {");
+			out.println();
+			out.print("\tprivate static final String[] FIELDS = {");
+			for (int i = 0; i < fields.size(); i++) {
+				out.print((i == 0 ? " \"" : ", \"") + fields.get(i).getSimpleName() + "\"");
+			}
+			out.println(" };");
+			out.println();
+
+			out.println("\t@Override");
+			out.println("\tpublic String[] fieldNames() {");
+			out.println("\t\treturn FIELDS.clone();");
+			out.println("\t}");
+			out.println();
+
+			out.println("\t@Override");
+			out.println("\tpublic " + entity + " newInstance() {");
+			out.println("\t\treturn new " + entity + "();");
+			out.println("\t}");
+			out.println();
+
+			out.println("\t@Override");
+			out.println("\tpublic Object get(" + entity + " entity, int field) {");
+			out.println("\t\tswitch (field) {");
+			for (int i = 0; i < fields.size(); i++) {
+				out.println("\t\tcase " + i + ": return " + boxed(fields.get(i).asType(), "entity." + fields.get(i).getSimpleName()) + ";");
+			}
+			out.println("\t\tdefault: throw new IllegalArgumentException(\"No field \" + field);");
+			out.println("\t\t}");
+			out.println("\t}");
+			out.println();
+
+			out.println("\t@Override");
+			out.println("\tpublic void set(" + entity + " entity, int field, Object value) {");
+			out.println("\t\tswitch (field) {");
+			for (int i = 0; i < fields.size(); i++) {
+				VariableElement field = fields.get(i);
+				TypeMirror fieldType = field.asType();
+				String target = "entity." + field.getSimpleName();
+				if (fieldType.getKind().isPrimitive()) {
+					out.println("\t\tcase " + i + ": if (value != null) " + target + " = ((" + boxedName(fieldType) + ") value)." + fieldType + "Value(); break;");
+				} else {
+					out.println("\t\tcase " + i + ": " + target + " = (" + types.erasure(fieldType) + ") value; break;");
+				}
+			}
+			out.println("\t\tdefault: throw new IllegalArgumentException(\"No field \" + field);");
+			out.println("\t\t}");
+			out.println("\t}");
+			out.println();
+
+			out.println("\t@Override");
+			out.println("\tpublic void read(SqlCursor cursor, int[] indexes, " + entity + " entity, boolean clearNulls) {");
+			out.println("\t\tint index;");
+			for (int i = 0; i < fields.size(); i++) {
+				VariableElement field = fields.get(i);
+				String target = "entity." + field.getSimpleName();
+				out.println("\t\tindex = indexes[" + i + "];");
+				out.println("\t\tif (index != -1) {");
+				if (isChar(field.asType())) {
+					out.println("\t\t\tString chars = cursor.isNull(index) ? null : cursor.getString(index);");
+					out.println("\t\t\tif (chars != null && chars.length() > 0) " + target + " = chars.charAt(0);");
+					out.println("\t\t\telse if (chars == null && clearNulls) " + target + " = " + empty(field.asType()) + ";");
+				} else {
+					out.println("\t\t\tif (!cursor.isNull(index)) " + target + " = " + read(field.asType()) + ";");
+					out.println("\t\t\telse if (clearNulls) " + target + " = " + empty(field.asType()) + ";");
+				}
+				out.println("\t\t}");
+			}
+			out.println("\t}");
+			out.println("}");
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Returns the expression that reads the column at index into a field of the type, the same way the library does by
+	 * reflection.
+	 */
+	private String read(TypeMirror type) {
+		Types types = processingEnv.getTypeUtils();
+		String name = type.getKind().isPrimitive() ? type.toString() : types.erasure(type).toString();
+		boolean primitive = type.getKind().isPrimitive();
+		if (name.equals("int") || name.equals("java.lang.Integer")) return primitive ? "cursor.getInt(index)" : "Integer.valueOf(cursor.getInt(index))";
+		if (name.equals("long") || name.equals("java.lang.Long")) return primitive ? "cursor.getLong(index)" : "Long.valueOf(cursor.getLong(index))";
+		if (name.equals("short") || name.equals("java.lang.Short")) return primitive ? "cursor.getShort(index)" : "Short.valueOf(cursor.getShort(index))";
+		if (name.equals("byte") || name.equals("java.lang.Byte")) return primitive ? "(byte) cursor.getInt(index)" : "Byte.valueOf((byte) cursor.getInt(index))";
+		if (name.equals("float") || name.equals("java.lang.Float")) return primitive ? "cursor.getFloat(index)" : "Float.valueOf(cursor.getFloat(index))";
+		if (name.equals("double") || name.equals("java.lang.Double")) return primitive ? "cursor.getDouble(index)" : "Double.valueOf(cursor.getDouble(index))";
+		if (name.equals("boolean") || name.equals("java.lang.Boolean")) return primitive ? "MapperSupport.readBoolean(cursor, index)" : "Boolean.valueOf(MapperSupport.readBoolean(cursor, index))";
+		if (name.equals("java.lang.String")) return "cursor.getString(index)";
+		if (name.equals("byte[]")) return "cursor.getBlob(index)";
+		if (name.equals("java.util.Date")) return "MapperSupport.readDate(cursor, index)";
+		if (type.getKind() == TypeKind.DECLARED && types.asElement(type).getKind() == ElementKind.ENUM) return "MapperSupport.readEnum(cursor, index, " + name + ".class)";
+		return "(" + name + ") MapperSupport.readObject(cursor, index, " + name + ".class)";
+	}
+
+	private static String empty(TypeMirror type) {
+		switch (type.getKind()) {
+		case BOOLEAN: return "false";
+		case CHAR: return "(char) 0";
+		case BYTE: return "(byte) 0";
+		case SHORT: return "(short) 0";
+		case INT: return "0";
+		case LONG: return "0L";
+		case FLOAT: return "0f";
+		case DOUBLE: return "0d";
+		default: return "null";
+		}
+	}
+
+	private static boolean isChar(TypeMirror type) {
+		return type.getKind() == TypeKind.CHAR || type.toString().equals("java.lang.Character");
+	}
+
+	private String boxed(TypeMirror type, String expression) {
+		if (!type.getKind().isPrimitive()) return expression;
+		return boxedName(type) + ".valueOf(" + expression + ")";
+	}
+
+	private String boxedName(TypeMirror type) {
+		return processingEnv.getTypeUtils().boxedClass(processingEnv.getTypeUtils().getPrimitiveType(type.getKind())).getSimpleName().toString();
+	}
+
+	private void error(Element element, String message) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+	}
+}
@@ -0,0 +1,259 @@
+package com.kas.androidsqlite;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+
+/**
+ * The backend of a DatabaseContext created with an Android Context: the database installed from the assets by a
+ * {@link DBOpenHelper}, opened with android.database.sqlite. The differences between API levels are handled here.
+ */
+final class AndroidBackend implements SqlBackend {
+
+	private final DBOpenHelper dbhelper;
+
+	AndroidBackend(DBOpenHelper dbhelper) {
+		this.dbhelper = dbhelper;
+	}
+
+	@Override
+	public SqlConnection open() {
+		return new AndroidConnection(dbhelper.openDataBase());
+	}
+
+	@Override
+	public SqlConnection openReadOnly() {
+		return new AndroidConnection(dbhelper.openReadOnlyDataBase());
+	}
+
+	@Override
+	public void close() {
+		dbhelper.close();
+	}
+
+	static final class AndroidConnection implements SqlConnection {
+		final SQLiteDatabase database;
+		private SQLiteStatement changes;
+
+		AndroidConnection(SQLiteDatabase database) {
+			this.database = database;
+		}
+
+		@Override
+		public SqlCursor query(String sql, String[] args) {
+			return new AndroidCursor(database.rawQuery(sql, args));
+		}
+
+		@Override
+		public SqlStatement compile(String sql) {
+			return new AndroidStatement(this, database.compileStatement(sql));
+		}
+
+		@Override
+		public void execute(String sql) {
+			database.execSQL(sql);
+		}
+
+		@Override
+		public void beginTransaction() {
+			database.beginTransaction();
+		}
+
+		@Override
+		public void setTransactionSuccessful() {
+			database.setTransactionSuccessful();
+		}
+
+		@Override
+		public void endTransaction() {
+			database.endTransaction();
+		}
+
+		@Override
+		public boolean inTransaction() {
+			return database.inTransaction();
+		}
+
+		/**
+		 * Needs API level 11, on older versions it returns false.
+		 */
+		@Override
+		public boolean enableWriteAheadLogging() {
+			if (Build.VERSION.SDK_INT < 11) return false;
+			return database.enableWriteAheadLogging();
+		}
+
+		@Override
+		public void disableWriteAheadLogging() {
+			if (Build.VERSION.SDK_INT >= 11) database.disableWriteAheadLogging();
+		}
+
+		/**
+		 * The SQLite of API level 30 is the first one with ON CONFLICT DO UPDATE.
+		 */
+		@Override
+		public boolean supportsUpsert() {
+			return Build.VERSION.SDK_INT >= 30;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return database.isOpen();
+		}
+
+		@Override
+		public synchronized void close() {
+			if (changes != null) changes.close();
+			changes = null;
+			database.close();
+		}
+
+		/**
+		 * Returns the number of rows changed by the last statement, for API levels without executeUpdateDelete.
+		 */
+		synchronized int changes() {
+			if (changes == null) changes = database.compileStatement("SELECT changes()");
+			return (int) changes.simpleQueryForLong();
+		}
+	}
+
+	static final class AndroidStatement implements SqlStatement {
+		private final AndroidConnection connection;
+		private final SQLiteStatement statement;
+
+		AndroidStatement(AndroidConnection connection, SQLiteStatement statement) {
+			this.connection = connection;
+			this.statement = statement;
+		}
+
+		@Override
+		public void bindNull(int index) {
+			statement.bindNull(index);
+		}
+
+		@Override
+		public void bindLong(int index, long value) {
+			statement.bindLong(index, value);
+		}
+
+		@Override
+		public void bindDouble(int index, double value) {
+			statement.bindDouble(index, value);
+		}
+
+		@Override
+		public void bindString(int index, String value) {
+			statement.bindString(index, value);
+		}
+
+		@Override
+		public void bindBlob(int index, byte[] value) {
+			statement.bindBlob(index, value);
+		}
+
+		@Override
+		public void clearBindings() {
+			statement.clearBindings();
+		}
+
+		@Override
+		public void execute() {
+			statement.execute();
+		}
+
+		@Override
+		public long executeInsert() {
+			return statement.executeInsert();
+		}
+
+		@Override
+		public int executeUpdateDelete() {
+			if (Build.VERSION.SDK_INT >= 11) return statement.executeUpdateDelete();
+			statement.execute();
+			return connection.changes();
+		}
+
+		@Override
+		public long simpleQueryForLong() {
+			return statement.simpleQueryForLong();
+		}
+
+		@Override
+		public void close() {
+			statement.close();
+		}
+	}
+
+	static final class AndroidCursor implements SqlCursor {
+		private final Cursor cursor;
+
+		AndroidCursor(Cursor cursor) {
+			this.cursor = cursor;
+		}
+
+		@Override
+		public boolean moveToNext() {
+			return cursor.moveToNext();
+		}
+
+		@Override
+		public int getColumnIndex(String name) {
+			return cursor.getColumnIndex(name);
+		}
+
+		@Override
+		public boolean isNull(int index) {
+			return cursor.isNull(index);
+		}
+
+		@Override
+		public String getString(int index) {
+			return cursor.getString(index);
+		}
+
+		@Override
+		public int getInt(int index) {
+			return cursor.getInt(index);
+		}
+
+		@Override
+		public long getLong(int index) {
+			return cursor.getLong(index);
+		}
+
+		@Override
+		public short getShort(int index) {
+			return cursor.getShort(index);
+		}
+
+		@Override
+		public float getFloat(int index) {
+			return cursor.getFloat(index);
+		}
+
+		@Override
+		public double getDouble(int index) {
+			return cursor.getDouble(index);
+		}
+
+		@Override
+		public byte[] getBlob(int index) {
+			return cursor.getBlob(index);
+		}
+
+		/**
+		 * Needs API level 11, on older versions it returns FIELD_TYPE_UNKNOWN.
+		 */
+		@Override
+		public int getType(int index) {
+			if (Build.VERSION.SDK_INT < 11) return FIELD_TYPE_UNKNOWN;
+			return cursor.getType(index);
+		}
+
+		@Override
+		public void close() {
+			cursor.close();
+		}
+	}
+}
@@ -0,0 +1,423 @@
+package com.kas.androidsqlite;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the operations of a {@link DatabaseContext} in the background. Reads run on a fixed number of reader threads
+ * and writes on a single writer thread, so a long write never holds up the reads queued behind it. Every method
+ * returns a Future that can be waited on or cancelled, and optionally takes a Callback that is called through the
+ * callback executor passed to the constructor, for example a {@link MainThreadExecutor}, or on the background thread if none is.
+ * Reads only run at the same time as each other and as the writes after
+ * {@link DatabaseContext#enableWriteAheadLogging(int)}, otherwise they take turns on the one connection.
+ * A read waits for the writes the same thread started before it, so it sees them; reads and writes started on
+ * different threads are not ordered. Each lane queues a bounded number of operations, beyond which the rejection
+ * policy applies, by default a RejectedExecutionException thrown by the method that started the operation.
+ * @ForExample <pre>
+ * <code>
+ * AsyncDatabaseContext async = new AsyncDatabaseContext(databaseContext, 3, new MainThreadExecutor());
+ * Future[List[Employee]] employees = async.findAll(new Employee(), Query.where("Department").eq(3), false);
+ * Future[List[Meeting]] meetings = async.getAll(new Meeting(), false);
+ * show(employees.get(), meetings.get());
+ *
+ * async.find(employee, true, new AsyncDatabaseContext.Callback[Employee]() {
+ *	public void onResult(Employee result) { ... }
+ *	public void onError(Throwable error) { ... }
+ * });
+ * </code>
+ * </pre>
+ */
+public class AsyncDatabaseContext {
+
+	/**
+	 * Receives the result of an operation. Neither method is called if the operation is cancelled.
+	 */
+	public interface Callback<R> {
+		void onResult(R result);
+
+		void onError(Throwable error);
+	}
+
+	private final DatabaseContext databaseContext;
+	private final ExecutorService reads;
+	private final ExecutorService writes;
+	private final Executor callbacks;
+	/** the last write started by each thread, that the reads it starts after it wait for */
+	private final ThreadLocal<Future<?>> pendingWrites = new ThreadLocal<Future<?>>();
+
+	/** operations each lane queues while its threads are busy, by default */
+	public static final int DEFAULT_QUEUE_CAPACITY = 128;
+
+	/**
+	 * The callbacks are called on the background thread the operation ran on.
+	 * @param databaseContext the context the operations run on
+	 * @param readerThreads number of reads that can run at the same time, for example 3
+	 */
+	public AsyncDatabaseContext(DatabaseContext databaseContext, int readerThreads) {
+		this(databaseContext, readerThreads, null);
+	}
+
+	/**
+	 * @param databaseContext the context the operations run on
+	 * @param readerThreads number of reads that can run at the same time, for example 3
+	 * @param callbacks the executor the callbacks are called through, for example new MainThreadExecutor(), or null to call them on the background thread
+	 */
+	public AsyncDatabaseContext(DatabaseContext databaseContext, int readerThreads, Executor callbacks) {
+		this(databaseContext, readerThreads, DEFAULT_QUEUE_CAPACITY, new ThreadPoolExecutor.AbortPolicy(), callbacks);
+	}
+
+	/**
+	 * @param databaseContext the context the operations run on
+	 * @param readerThreads number of reads that can run at the same time, for example 3
+	 * @param queueCapacity number of operations each lane queues while its threads are busy, for example 128
+	 * @param rejection what happens to an operation started while its lane's queue is full, for example
+	 * ThreadPoolExecutor.CallerRunsPolicy to run it on the calling thread, or AbortPolicy to throw a RejectedExecutionException.
+	 * Policies that discard it leave its Future never done, and the reads started after a discarded write would wait for it, so use one of these two.
+	 */
+	public AsyncDatabaseContext(DatabaseContext databaseContext, int readerThreads, int queueCapacity, RejectedExecutionHandler rejection) {
+		this(databaseContext, readerThreads, queueCapacity, rejection, null);
+	}
+
+	/**
+	 * @param databaseContext the context the operations run on
+	 * @param readerThreads number of reads that can run at the same time, for example 3
+	 * @param queueCapacity number of operations each lane queues while its threads are busy, for example 128
+	 * @param rejection what happens to an operation started while its lane's queue is full, see {@link #AsyncDatabaseContext(DatabaseContext, int, int, RejectedExecutionHandler)}
+	 * @param callbacks the executor the callbacks are called through, or null to call them on the background thread
+	 */
+	public AsyncDatabaseContext(DatabaseContext databaseContext, int readerThreads, int queueCapacity, RejectedExecutionHandler rejection, Executor callbacks) {
+		this(databaseContext, newLane("DatabaseContext-reader", readerThreads, queueCapacity, rejection), newLane("DatabaseContext-writer", 1, queueCapacity, rejection), callbacks);
+	}
+
+	/**
+	 * @param databaseContext the context the operations run on
+	 * @param reads the executor the reads run on
+	 * @param writes the executor the writes run on. Writes are serialized by the DatabaseContext anyway, so more than one thread only adds waiting threads.
+	 */
+	public AsyncDatabaseContext(DatabaseContext databaseContext, ExecutorService reads, ExecutorService writes) {
+		this(databaseContext, reads, writes, null);
+	}
+
+	/**
+	 * @param databaseContext the context the operations run on
+	 * @param reads the executor the reads run on
+	 * @param writes the executor the writes run on
+	 * @param callbacks the executor the callbacks are called through, or null to call them on the background thread
+	 */
+	public AsyncDatabaseContext(DatabaseContext databaseContext, ExecutorService reads, ExecutorService writes, Executor callbacks) {
+		if (databaseContext == null || reads == null || writes == null) throw new IllegalArgumentException("databaseContext and executors must not be null");
+		this.databaseContext = databaseContext;
+		this.reads = reads;
+		this.writes = writes;
+		this.callbacks = callbacks;
+	}
+
+	public DatabaseContext getDatabaseContext() {
+		return databaseContext;
+	}
+
+	/**
+	 * See {@link DatabaseContext#add(Object)}
+	 */
+	public <T> Future<T> add(T entity) {
+		return add(entity, null);
+	}
+
+	public <T> Future<T> add(final T entity, Callback<T> callback) {
+		return write(new Callable<T>() {
+			@Override
+			public T call() {
+				return databaseContext.add(entity);
+			}
+		}, callback);
+	}
+
+	/**
+	 * See {@link DatabaseContext#add(Object, String, boolean)}
+	 * @deprecated mark the primary key with {@link Id} and use {@link #add(Object)}
+	 */
+	@Deprecated
+	public <T> Future<T> add(T entity, String IdPropertyName, boolean isAutoIncrement) {
+		return add(entity, IdPropertyName, isAutoIncrement, null);
+	}
+
+	@Deprecated
+	public <T> Future<T> add(final T entity, final String IdPropertyName, final boolean isAutoIncrement, Callback<T> callback) {
+		return write(new Callable<T>() {
+			@Override
+			public T call() {
+				return databaseContext.add(entity, IdPropertyName, isAutoIncrement);
+			}
+		}, callback);
+	}
+
+	/**
+	 * See {@link DatabaseContext#addAll(List)}
+	 */
+	public <T> Future<List<T>> addAll(List<T> entities) {
+		return addAll(entities, null);
+	}
+
+	public <T> Future<List<T>> addAll(final List<T> entities, Callback<List<T>> callback) {
+		return write(new Callable<List<T>>() {
+			@Override
+			public List<T> call() {
+				return databaseContext.addAll(entities);
+			}
+		}, callback);
+	}
+
+	/**
+	 * See {@link DatabaseContext#addAll(List, String, boolean)}
+	 * @deprecated mark the primary key with {@link Id} and use {@link #addAll(List)}
+	 */
+	@Deprecated
+	public <T> Future<List<T>> addAll(List<T> entities, String IdPropertyName, boolean isAutoIncrement) {
+		return addAll(entities, IdPropertyName, isAutoIncrement, null);
+	}
+
+	@Deprecated
+	public <T> Future<List<T>> addAll(final List<T> entities, final String IdPropertyName, final boolean isAutoIncrement, Callback<List<T>> callback) {
+		return write(new Callable<List<T>>() {
+			@Override
+			public List<T> call() {
+				return databaseContext.addAll(entities, IdPropertyName, isAutoIncrement);
+			}
+		}, callback);
+	}
+
+	/**
+	 * See {@link DatabaseContext#find(Object, boolean)}
+	 */
+	public <T> Future<T> find(T entity, boolean withAllItsListFields) {
+		return find(entity, withAllItsListFields, null);
+	}
+
+	public <T> Future<T> find(final T entity, final boolean withAllItsListFields, Callback<T> callback) {
+		return read(new Callable<T>() {
+			@Override
+			public T call() {
+				return databaseContext.find(entity, withAllItsListFields);
+			}
+		}, callback);
+	}
+
+	/**
+	 * See {@link DatabaseContext#getAll(Object, boolean)}
+	 */
+	public <T> Future<List<T>> getAll(T entity, boolean withAllItsListFields) {
+		return getAll(entity, withAllItsListFields, null);
+	}
+
+	public <T> Future<List<T>> getAll(final T entity, final boolean withAllItsListFields, Callback<List<T>> callback) {
+		return read(new Callable<List<T>>() {
+			@Override
+			public List<T> call() {
+				return databaseContext.getAll(entity, withAllItsListFields);
+			}
+		}, callback);
+	}
+
+	/**
+	 * See {@link DatabaseContext#findAll(Object, Map, boolean)}
+	 */
+	public <T> Future<List<T>> findAll(T entity, Map<String, ?> values, boolean withAllItsListFields) {
+		return findAll(entity, values, withAllItsListFields, null);
+	}
+
+	public <T> Future<List<T>> findAll(final T entity, final Map<String, ?> values, final boolean withAllItsListFields, Callback<List<T>> callback) {
+		return read(new Callable<List<T>>() {
+			@Override
+			public List<T> call() {
+				return databaseContext.findAll(entity, values, withAllItsListFields);
+			}
+		}, callback);
+	}
+
+	/**
+	 * See {@link DatabaseContext#findAll(Object, Query, boolean)}
+	 */
+	public <T> Future<List<T>> findAll(T entity, Query query, boolean withAllItsListFields) {
+		return findAll(entity, query, withAllItsListFields, null);
+	}
+
+	public <T> Future<List<T>> findAll(final T entity, final Query query, final boolean withAllItsListFields, Callback<List<T>> callback) {
+		return read(new Callable<List<T>>() {
+			@Override
+			public List<T> call() {
+				return databaseContext.findAll(entity, query, withAllItsListFields);
+			}
+		}, callback);
+	}
+
+	/**
+	 * See {@link DatabaseContext#update(Object, boolean)}
+	 */
+	public <T> Future<T> update(T entity, boolean withAllItsListFields) {
+		return update(entity, withAllItsListFields, null);
+	}
+
+	public <T> Future<T> update(final T entity, final boolean withAllItsListFields, Callback<T> callback) {
+		return write(new Callable<T>() {
+			@Override
+			public T call() {
+				return databaseContext.update(entity, withAllItsListFields);
+			}
+		}, callback);
+	}
+
+	/**
+	 * See {@link DatabaseContext#delete(Object)}
+	 */
+	public Future<Integer> delete(Object entity) {
+		return delete(entity, null);
+	}
+
+	public Future<Integer> delete(final Object entity, Callback<Integer> callback) {
+		return write(new Callable<Integer>() {
+			@Override
+			public Integer call() {
+				return Integer.valueOf(databaseContext.delete(entity));
+			}
+		}, callback);
+	}
+
+	/**
+	 * See {@link DatabaseContext#rawQuery(Object, String)}
+	 */
+	public <T> Future<List<T>> rawQuery(T entityToReturn, String SQLQuery) {
+		return rawQuery(entityToReturn, SQLQuery, null);
+	}
+
+	public <T> Future<List<T>> rawQuery(final T entityToReturn, final String SQLQuery, Callback<List<T>> callback) {
+		return read(new Callable<List<T>>() {
+			@Override
+			public List<T> call() {
+				return databaseContext.rawQuery(entityToReturn, SQLQuery);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Stops accepting new operations. The ones already started are finished, the queued ones are finished as well unless they are cancelled.
+	 * Executors passed to the constructor are shut down too.
+	 */
+	public void shutdown() {
+		reads.shutdown();
+		writes.shutdown();
+	}
+
+	private <R> Future<R> write(Callable<R> task, Callback<R> callback) {
+		Future<R> future = submit(writes, task, callback);
+		pendingWrites.set(future);
+		return future;
+	}
+
+	/**
+	 * Runs the read after the last write started on this thread, so that it sees it.
+	 */
+	private <R> Future<R> read(final Callable<R> task, Callback<R> callback) {
+		final Future<?> write = pendingWrites.get();
+		if (write == null || write.isDone()) {
+			pendingWrites.remove();
+			return submit(reads, task, callback);
+		}
+		return submit(reads, new Callable<R>() {
+			@Override
+			public R call() throws Exception {
+				try {
+					write.get();
+				} catch (CancellationException e) {
+					// the read runs anyway, the write's outcome goes to its own future
+				} catch (ExecutionException e) {
+					// same
+				}
+				return task.call();
+			}
+		}, callback);
+	}
+
+	/**
+	 * @throws RejectedExecutionException if the lane is full and its rejection policy is to abort
+	 */
+	private <R> Future<R> submit(ExecutorService lane, Callable<R> task, final Callback<R> callback) {
+		FutureTask<R> future;
+		if (callback == null) {
+			future = new FutureTask<R>(task);
+		} else {
+			future = new FutureTask<R>(task) {
+				@Override
+				protected void done() {
+					if (isCancelled()) return;
+					Runnable delivery = new Delivery<R>(this, callback);
+					if (callbacks == null) delivery.run();
+					else callbacks.execute(delivery);
+				}
+			};
+		}
+		lane.execute(future);
+		return future;
+	}
+
+	/**
+	 * Passes the outcome of a finished operation to its callback.
+	 */
+	private static final class Delivery<R> implements Runnable {
+		private final Future<R> future;
+		private final Callback<R> callback;
+
+		Delivery(Future<R> future, Callback<R> callback) {
+			this.future = future;
+			this.callback = callback;
+		}
+
+		@Override
+		public void run() {
+			// the operation may have been cancelled after it finished but before the delivery
+			if (future.isCancelled()) return;
+			R result;
+			try {
+				result = future.get();
+			} catch (CancellationException e) {
+				return;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (ExecutionException e) {
+				callback.onError(e.getCause());
+				return;
+			}
+			callback.onResult(result);
+		}
+	}
+
+	private static ExecutorService newLane(final String name, int threads, int queueCapacity, RejectedExecutionHandler rejection) {
+		if (threads < 1) throw new IllegalArgumentException("The executor needs at least one thread");
+		if (queueCapacity < 1) throw new IllegalArgumentException("The queue needs room for at least one operation");
+		if (rejection == null) throw new IllegalArgumentException("rejection must not be null");
+		return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		}, rejection);
+	}
+}
@@ -0,0 +1,78 @@
+package com.kas.androidsqlite;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Deletes the rows of a table that match a where clause, together with the rows of their list fields at every level.
+ * Each table is cleared with one statement, <code>DELETE FROM Child WHERE Parent IN (SELECT id FROM Parent WHERE
+ * ...)</code>, nested as deep as the relations go; the deepest tables are deleted first so the subqueries still see
+ * the rows of the tables above them. Should be run inside a transaction so that a failure leaves no half deleted graph.
+ */
+final class BulkDeleter {
+
+	private final SqlConnection database;
+	private final StatementCache statements;
+
+	/**
+	 * @param statements cache for the statements, or null to compile them every time. Only worth it when the
+	 * statements are the same every time, for example when deleting a single row by id.
+	 */
+	BulkDeleter(SqlConnection database, StatementCache statements) {
+		this.database = database;
+		this.statements = statements;
+	}
+
+	/**
+	 * Deletes the rows matching the selection and all their children.
+	 * @param idName the column the children refer to, usually "id"
+	 * @param selection where clause with ? in place of the values, or null to delete all the rows
+	 * @return returns the number of rows deleted from the table itself
+	 */
+	int delete(EntityMetadata metadata, String idName, String selection, String[] args) {
+		String where = selection == null ? "" : " WHERE " + selection;
+		Set<EntityMetadata.Relation> path = new HashSet<EntityMetadata.Relation>();
+		deleteChildren(metadata, "SELECT " + idName + " FROM " + metadata.tableName + where, args, path);
+		return execute("DELETE FROM " + metadata.tableName + where, args);
+	}
+
+	private void deleteChildren(EntityMetadata parent, String parentIds, String[] args, Set<EntityMetadata.Relation> path) {
+		for (EntityMetadata.Relation relation : parent.relations) {
+			if (relation.elementType == null) continue;
+			// an entity that contains itself, directly or further down, is only followed through each list field once
+			if (!path.add(relation)) continue;
+			EntityMetadata child = relation.element();
+
+			String where = " WHERE " + parent.tableName + " IN (" + parentIds + ")";
+			if (child.id != null) deleteChildren(child, "SELECT " + child.id.name + " FROM " + child.tableName + where, args, path);
+			execute("DELETE FROM " + child.tableName + where, args);
+			path.remove(relation);
+		}
+	}
+
+	private int execute(String sql, String[] args) {
+		if (statements != null) {
+			SqlStatement statement = statements.get(database, sql);
+			if (statement == null) statement = statements.compile(database, sql, sql);
+			try {
+				bind(statement, args);
+				return statement.executeUpdateDelete();
+			} finally {
+				statements.release(sql, statement);
+			}
+		}
+		SqlStatement statement = database.compile(sql);
+		try {
+			bind(statement, args);
+			return statement.executeUpdateDelete();
+		} finally {
+			statement.close();
+		}
+	}
+
+	private static void bind(SqlStatement statement, String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			statement.bindString(i + 1, args[i]);
+		}
+	}
+}
@@ -0,0 +1,258 @@
+package com.kas.androidsqlite;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Inserts or upserts entities, and the entities in their list fields, inside transactions using one cached compiled
+ * statement per table and set of non-null columns. The transaction is committed every
+ * {@link #chunkSize} rows so that a huge list doesn't hold the write lock for the whole import; an entity is never
+ * split from its children across two transactions. If a row fails the current chunk is rolled back, the ids and
+ * parent ids it assigned are set back on the entities, and the exception is thrown; the chunks committed before it
+ * stay. Inside a transaction of the caller there are no chunks, so nothing of the list stays.
+ */
+final class BulkInserter {
+
+	static final int DEFAULT_CHUNK_SIZE = 500;
+
+	private final SqlConnection database;
+	private final StatementCache statements;
+	private final int chunkSize;
+	private int rowsInTransaction;
+	/** metadata, entity, property and previous value of every property set since the last commit */
+	private final List<Object[]> assigned = new ArrayList<Object[]>();
+
+	/**
+	 * @param chunkSize number of rows after which the transaction is committed and a new one started. It is ignored
+	 * when the database is already in a transaction started by the caller.
+	 */
+	BulkInserter(SqlConnection database, StatementCache statements, int chunkSize) {
+		this.database = database;
+		this.statements = statements;
+		this.chunkSize = Math.max(1, chunkSize);
+	}
+
+	/**
+	 * Inserts the entities and all their list fields and assigns the insert ids.
+	 * @param idPropertyName the primary key name, or null for the one marked with {@link Id} or else "id"
+	 * @param isAutoIncrement true if the primary key is left out of the insert. Only used with an idPropertyName, the
+	 * other entities are auto-increment unless their {@link Id} says otherwise.
+	 */
+	<T> List<T> insertAll(List<T> entities, String idPropertyName, boolean isAutoIncrement) {
+		return writeAll(entities, idPropertyName, isAutoIncrement, false);
+	}
+
+	/**
+	 * Inserts the entities that are not in the table yet and updates the non-null columns of the ones that are, with
+	 * all their list fields. Entities with no id (null or 0) are inserted and get the insert id.
+	 * @param idPropertyName the primary key name, or null for the one marked with {@link Id} or else "id"
+	 */
+	<T> List<T> upsertAll(List<T> entities, String idPropertyName) {
+		return writeAll(entities, idPropertyName, true, true);
+	}
+
+	private <T> List<T> writeAll(List<T> entities, String idPropertyName, boolean isAutoIncrement, boolean upsert) {
+		boolean ownsTransaction = !database.inTransaction();
+		database.beginTransaction();
+		try {
+			for (T entity : entities) {
+				insert(entity, idPropertyName, isAutoIncrement, null, null, upsert);
+				if (ownsTransaction && rowsInTransaction >= chunkSize) {
+					database.setTransactionSuccessful();
+					database.endTransaction();
+					rowsInTransaction = 0;
+					assigned.clear();
+					database.beginTransaction();
+				}
+			}
+			database.setTransactionSuccessful();
+		} catch (RuntimeException e) {
+			// the chunk is rolled back without setTransactionSuccessful, its rows no longer exist
+			restoreAssigned();
+			throw e;
+		} finally {
+			database.endTransaction();
+			rowsInTransaction = 0;
+			assigned.clear();
+		}
+		return entities;
+	}
+
+	private void assign(EntityMetadata metadata, Object entity, String name, Object value) {
+		assigned.add(new Object[] { metadata, entity, name, metadata.get(entity, name) });
+		metadata.set(entity, name, value);
+	}
+
+	private void restoreAssigned() {
+		for (int i = assigned.size() - 1; i >= 0; i--) {
+			Object[] previous = assigned.get(i);
+			((EntityMetadata) previous[0]).set(previous[1], (String) previous[2], previous[3]);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void insert(Object entity, String idPropertyName, boolean isAutoIncrement, String foreignKey, Object foreignKeyValue, boolean upsert) {
+		EntityMetadata metadata = EntityMetadata.of(entity.getClass());
+		EntityMetadata.Column idColumn = metadata.idColumn(idPropertyName);
+		String idName = idPropertyName != null ? idPropertyName : idColumn != null ? idColumn.name : EntityMetadata.DEFAULT_ID;
+		if (idPropertyName == null) isAutoIncrement = metadata.autoIncrement;
+
+		Object id = idColumn == null ? null : idColumn.get(entity);
+		if (upsert && hasId(id)) {
+			upsertRow(metadata, entity, idColumn, foreignKey, foreignKeyValue);
+		} else {
+			id = Long.valueOf(insertRow(metadata, entity, isAutoIncrement ? idColumn : null, foreignKey, foreignKeyValue));
+			assign(metadata, entity, idName, id);
+		}
+		rowsInTransaction++;
+		if (foreignKey != null) assign(metadata, entity, foreignKey, foreignKeyValue);
+
+		for (EntityMetadata.Relation relation : metadata.relations) {
+			Object value = relation.get(entity);
+			if (!(value instanceof List<?>)) continue;
+			for (Object child : (List<Object>) value) {
+				insert(child, null, true, metadata.tableName, id, upsert);
+			}
+		}
+	}
+
+	private static boolean hasId(Object id) {
+		if (id instanceof Number) return ((Number) id).longValue() != 0;
+		return id != null;
+	}
+
+	/**
+	 * Inserts the row, or updates its non-null columns if a row with its id exists. Uses
+	 * <code>INSERT ... ON CONFLICT DO UPDATE</code> where SQLite supports it (3.24, API level 30), and an
+	 * <code>UPDATE</code> followed by an <code>INSERT</code> when it changed no row on older versions.
+	 */
+	private void upsertRow(EntityMetadata metadata, Object entity, EntityMetadata.Column idColumn, String foreignKey, Object foreignKeyValue) {
+		EntityMetadata.Column[] columns = metadata.columns;
+		Object[] values = new Object[columns.length];
+		StringBuilder shape = new StringBuilder(" [");
+		for (int i = 0; i < columns.length; i++) {
+			EntityMetadata.Column column = columns[i];
+			if (foreignKey != null && column.name.equalsIgnoreCase(foreignKey)) continue;
+			values[i] = column.get(entity);
+			if (values[i] != null) shape.append(i).append(',');
+		}
+		shape.append("] by ").append(idColumn.name);
+		if (foreignKey != null) shape.append(" with ").append(foreignKey);
+
+		boolean onConflict = database.supportsUpsert();
+		String key = (onConflict ? "upsert " : "upsert by update ") + metadata.tableName + shape;
+		SqlStatement statement = statements.get(database, key);
+		if (statement == null) {
+			String sql = onConflict ? upsertSql(metadata, values, idColumn, foreignKey) : updateSql(metadata, values, idColumn, foreignKey);
+			statement = statements.compile(database, key, sql);
+		}
+		try {
+			int index = 1;
+			for (int i = 0; i < values.length; i++) {
+				// the update binds the id last, in its WHERE clause
+				if (values[i] != null && (onConflict || columns[i] != idColumn)) StatementCache.bind(statement, index++, values[i]);
+			}
+			if (foreignKey != null) StatementCache.bind(statement, index++, foreignKeyValue);
+			if (onConflict) {
+				statement.executeInsert();
+				return;
+			}
+			StatementCache.bind(statement, index, values[indexOf(columns, idColumn)]);
+			if (statement.executeUpdateDelete() > 0) return;
+		} finally {
+			statements.release(key, statement);
+		}
+		insertRow(metadata, entity, null, foreignKey, foreignKeyValue);
+	}
+
+	/**
+	 * @return the id of the inserted row
+	 * @throws IllegalStateException if no row was inserted, and what the backend throws when the insert fails
+	 */
+	private long insertRow(EntityMetadata metadata, Object entity, EntityMetadata.Column excluded, String foreignKey, Object foreignKeyValue) {
+		EntityMetadata.Column[] columns = metadata.columns;
+		Object[] values = new Object[columns.length];
+		StringBuilder shape = new StringBuilder("insert ").append(metadata.tableName).append(" [");
+		for (int i = 0; i < columns.length; i++) {
+			EntityMetadata.Column column = columns[i];
+			if (column == excluded || (foreignKey != null && column.name.equalsIgnoreCase(foreignKey))) continue;
+			values[i] = column.get(entity);
+			if (values[i] != null) shape.append(i).append(',');
+		}
+		shape.append(']');
+		if (foreignKey != null) shape.append(" with ").append(foreignKey);
+
+		String key = shape.toString();
+		SqlStatement statement = statements.get(database, key);
+		if (statement == null) statement = statements.compile(database, key, insertSql(metadata, values, foreignKey));
+		try {
+			int index = 1;
+			for (Object value : values) {
+				if (value != null) StatementCache.bind(statement, index++, value);
+			}
+			if (foreignKey != null) StatementCache.bind(statement, index, foreignKeyValue);
+
+			long id = statement.executeInsert();
+			if (id == -1) throw new IllegalStateException("No row was inserted into " + metadata.tableName);
+			return id;
+		} finally {
+			statements.release(key, statement);
+		}
+	}
+
+	private static String upsertSql(EntityMetadata metadata, Object[] values, EntityMetadata.Column idColumn, String foreignKey) {
+		StringBuilder sql = new StringBuilder(insertSql(metadata, values, foreignKey)).append(" ON CONFLICT(").append(idColumn.name).append(")");
+		String set = setClause(metadata, values, idColumn, foreignKey, true);
+		if (set.length() == 0) return sql.append(" DO NOTHING").toString();
+		return sql.append(" DO UPDATE SET ").append(set).toString();
+	}
+
+	private static String updateSql(EntityMetadata metadata, Object[] values, EntityMetadata.Column idColumn, String foreignKey) {
+		String set = setClause(metadata, values, idColumn, foreignKey, false);
+		// with nothing to set the id is set to itself, only to find out if the row exists
+		if (set.length() == 0) set = idColumn.name + "=" + idColumn.name;
+		return "UPDATE " + metadata.tableName + " SET " + set + " WHERE " + idColumn.name + " = ?";
+	}
+
+	private static String setClause(EntityMetadata metadata, Object[] values, EntityMetadata.Column idColumn, String foreignKey, boolean excluded) {
+		StringBuilder set = new StringBuilder();
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] == null || metadata.columns[i] == idColumn) continue;
+			appendSet(set, metadata.columns[i].name, excluded);
+		}
+		if (foreignKey != null) appendSet(set, foreignKey, excluded);
+		return set.toString();
+	}
+
+	private static void appendSet(StringBuilder set, String column, boolean excluded) {
+		if (set.length() > 0) set.append(',');
+		set.append(column).append('=');
+		if (excluded) set.append("excluded.").append(column);
+		else set.append('?');
+	}
+
+	private static int indexOf(EntityMetadata.Column[] columns, EntityMetadata.Column column) {
+		for (int i = 0; i < columns.length; i++) {
+			if (columns[i] == column) return i;
+		}
+		return -1;
+	}
+
+	private static String insertSql(EntityMetadata metadata, Object[] values, String foreignKey) {
+		StringBuilder sql = new StringBuilder("INSERT INTO ").append(metadata.tableName);
+		StringBuilder columnNames = new StringBuilder();
+		int count = 0;
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] == null) continue;
+			if (count++ > 0) columnNames.append(',');
+			columnNames.append(metadata.columns[i].name);
+		}
+		if (foreignKey != null) {
+			if (count++ > 0) columnNames.append(',');
+			columnNames.append(foreignKey);
+		}
+		if (count == 0) return sql.append(" DEFAULT VALUES").toString();
+		return sql.append(" (").append(columnNames).append(") VALUES (").append(RelationLoader.placeholders(count))
+				.append(')').toString();
+	}
+}
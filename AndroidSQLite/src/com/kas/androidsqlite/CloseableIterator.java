@@ -0,0 +1,29 @@
+package com.kas.androidsqlite;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * An iterator over the records of a query that reads the rows from the database only while it advances. It must be
+ * closed when it is not read to the end, it closes itself when it reaches the end.
+ * It is also its own {@link Iterable} so it can be used in a for-each loop, but only once.
+ * @ForExample <pre>
+ * <code>
+ * CloseableIterator[Employee] employees = databaseContext.iterate(new Employee(), false);
+ * try {
+ *	for (Employee employee : employees) {
+ *		if (employee.salary > 1000) break;
+ *	}
+ * } finally {
+ *	employees.close();
+ * }
+ * </code>
+ * </pre>
+ */
+public interface CloseableIterator<T> extends Iterator<T>, Iterable<T>, Closeable {
+
+	/**
+	 * Closes the cursor. Calling it more than once has no effect.
+	 */
+	void close();
+}
@@ -0,0 +1,19 @@
+package com.kas.androidsqlite;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Maps a field to a column with another name.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Column {
+
+	/**
+	 * Name of the column, the name of the field if empty.
+	 */
+	String name() default "";
+}
@@ -0,0 +1,139 @@
+package com.kas.androidsqlite;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares one open connection between all the operations that need it. Every operation acquires the connection and
+ * releases it when it is done; the connection is opened by the first acquire and closed when it has not been acquired
+ * for the idle timeout. Nested and concurrent operations use the same connection instead of opening their own.
+ */
+final class ConnectionManager {
+
+	static final long DEFAULT_IDLE_TIMEOUT = 5000;
+
+	private static ScheduledExecutorService closer;
+
+	private final SqlBackend backend;
+	private final StatementCache statements;
+	private SqlConnection database;
+	private int references;
+	private long idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT;
+	private boolean writeAheadLogging;
+	private ScheduledFuture<?> pendingClose;
+	private Runnable pendingTask;
+
+	/**
+	 * @param statements statements compiled on the connection, they are closed before the connection is
+	 */
+	ConnectionManager(SqlBackend backend, StatementCache statements) {
+		this.backend = backend;
+		this.statements = statements;
+	}
+
+	/**
+	 * Returns the open connection, opening it if needed. Every call must be followed by a {@link #release()}.
+	 */
+	synchronized SqlConnection acquire() {
+		cancelPendingClose();
+		if (database == null || !database.isOpen()) {
+			database = backend.open();
+			// the journal mode is set again every time a connection is opened
+			if (writeAheadLogging) database.enableWriteAheadLogging();
+		}
+		references++;
+		return database;
+	}
+
+	/**
+	 * Gives back the connection. When nothing else uses it, it is closed after the idle timeout, or right away if the
+	 * timeout is 0.
+	 */
+	synchronized void release() {
+		if (references == 0) return;
+		if (--references > 0 || database == null) return;
+
+		if (idleTimeoutMillis <= 0) {
+			closeNow();
+			return;
+		}
+		pendingTask = new Runnable() {
+			@Override
+			public void run() {
+				closeIfIdle(this);
+			}
+		};
+		pendingClose = closer().schedule(pendingTask, idleTimeoutMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Closes the connection now if nothing is using it.
+	 * @return true if the connection is closed
+	 */
+	synchronized boolean closeIfUnused() {
+		if (references > 0) return false;
+		closeNow();
+		return true;
+	}
+
+	synchronized boolean isOpen() {
+		return database != null && database.isOpen();
+	}
+
+	/**
+	 * Enables or disables write-ahead logging on the connection, now and every time it is opened again.
+	 * @return false if it could not be changed, for example because a transaction is in progress
+	 */
+	synchronized boolean setWriteAheadLogging(boolean enabled) {
+		writeAheadLogging = enabled;
+		if (database == null || !database.isOpen()) return true;
+		if (enabled) return database.enableWriteAheadLogging();
+		database.disableWriteAheadLogging();
+		return true;
+	}
+
+	synchronized void setIdleTimeout(long idleTimeoutMillis) {
+		this.idleTimeoutMillis = idleTimeoutMillis;
+	}
+
+	synchronized long getIdleTimeout() {
+		return idleTimeoutMillis;
+	}
+
+	private synchronized void closeIfIdle(Runnable task) {
+		// the connection may have been acquired again, or released again with a newer close scheduled
+		if (references > 0 || task != pendingTask) return;
+		closeNow();
+	}
+
+	private void cancelPendingClose() {
+		if (pendingClose != null) pendingClose.cancel(false);
+		pendingClose = null;
+		pendingTask = null;
+	}
+
+	private void closeNow() {
+		cancelPendingClose();
+		statements.clear();
+		if (database != null) database.close();
+		database = null;
+	}
+
+	private static synchronized ScheduledExecutorService closer() {
+		if (closer == null) {
+			ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "DatabaseContext-closer");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			closer = executor;
+		}
+		return closer;
+	}
+}
@@ -0,0 +1,73 @@
+package com.kas.androidsqlite;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+
+/**
+ * {@link CloseableIterator} that maps one row of the cursor each time it advances.
+ */
+class CursorIterator<T> implements CloseableIterator<T> {
+
+	private final SqlCursor cursor;
+	private final CursorMapper<T> mapper;
+	private final boolean reuseInstance;
+	private T instance;
+	private boolean advanced;
+	private boolean hasRow;
+	private boolean closed;
+
+	/**
+	 * @param reuseInstance if true the same instance is filled and returned for every row
+	 */
+	CursorIterator(Class<T> type, SqlCursor cursor, boolean reuseInstance) {
+		this.cursor = cursor;
+		this.mapper = new CursorMapper<T>(type, cursor);
+		this.reuseInstance = reuseInstance;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (closed) return false;
+		if (!advanced) {
+			hasRow = cursor.moveToNext();
+			advanced = true;
+			if (!hasRow) close();
+		}
+		return hasRow;
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) throw new NoSuchElementException();
+		advanced = false;
+		if (!reuseInstance) return mapper.map(cursor);
+		instance = instance == null ? mapper.map(cursor) : mapper.map(cursor, instance);
+		return instance;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Iterator<T> iterator() {
+		return this;
+	}
+
+	@Override
+	public void close() {
+		if (closed) return;
+		closed = true;
+		hasRow = false;
+		cursor.close();
+		onClose();
+	}
+
+	/**
+	 * Called once, after the cursor is closed.
+	 */
+	protected void onClose() {
+	}
+}
@@ -0,0 +1,209 @@
+package com.kas.androidsqlite;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+import com.google.gson.Gson;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Maps the rows of a cursor directly into entities. The column indexes are resolved once when the mapper is created,
+ * after that every row is read straight into the fields of a new instance. Columns that are null in the row, and
+ * fields that have no column in the cursor, keep the value given to them by the entity's constructor. Entities with a
+ * generated {@link EntityMapper} are read by it, the others by reflection.
+ */
+final class CursorMapper<T> {
+
+	/** Only used for fields of types that the cursor can't read natively. */
+	private static final Gson GSON = new Gson();
+
+	private final EntityMetadata metadata;
+	private final EntityMetadata.Column[] columns;
+	private final int[] indexes;
+	/** the cursor index of every field of the generated mapper, null if the entity has no mapper */
+	private final int[] mapperIndexes;
+	private final IdentityMap identities;
+	private final int idIndex;
+
+	CursorMapper(Class<T> type, SqlCursor cursor) {
+		this(type, cursor, null);
+	}
+
+	/**
+	 * @param identities if not null, rows with the id of an entity already in it are mapped to that entity, and new
+	 * entities are added to it. Only used when the cursor has all the columns, partly read entities are never shared.
+	 */
+	CursorMapper(Class<T> type, SqlCursor cursor, IdentityMap identities) {
+		this.metadata = EntityMetadata.of(type);
+
+		List<EntityMetadata.Column> present = new ArrayList<EntityMetadata.Column>();
+		List<Integer> presentIndexes = new ArrayList<Integer>();
+		for (EntityMetadata.Column column : metadata.columns) {
+			int index = cursor.getColumnIndex(column.name);
+			if (index == -1) continue;
+			present.add(column);
+			presentIndexes.add(index);
+		}
+
+		this.columns = present.toArray(new EntityMetadata.Column[present.size()]);
+		this.indexes = new int[columns.length];
+		for (int i = 0; i < indexes.length; i++) {
+			indexes[i] = presentIndexes.get(i);
+		}
+
+		EntityMapper<Object> mapper = metadata.mapper();
+		if (mapper == null) {
+			this.mapperIndexes = null;
+		} else {
+			this.mapperIndexes = new int[mapper.fieldNames().length];
+			Arrays.fill(mapperIndexes, -1);
+			for (int i = 0; i < columns.length; i++) {
+				mapperIndexes[columns[i].slot] = indexes[i];
+			}
+		}
+
+		boolean complete = columns.length == metadata.columns.length && metadata.id != null;
+		this.identities = complete ? identities : null;
+		this.idIndex = metadata.id == null ? -1 : cursor.getColumnIndex(metadata.id.name);
+	}
+
+	EntityMetadata metadata() {
+		return metadata;
+	}
+
+	/**
+	 * Maps the row the cursor is currently positioned on into a new entity.
+	 */
+	@SuppressWarnings("unchecked")
+	T map(SqlCursor cursor) {
+		if (identities == null || cursor.isNull(idIndex)) {
+			Object entity = metadata.newInstance();
+			fill(cursor, entity, false);
+			return (T) entity;
+		}
+		String id = cursor.getString(idIndex);
+		Object loaded = identities.get(metadata.type, id);
+		if (loaded != null) return (T) loaded;
+
+		Object entity = metadata.newInstance();
+		fill(cursor, entity, false);
+		return (T) identities.intern(metadata.type, id, entity);
+	}
+
+	/**
+	 * Maps the row the cursor is currently positioned on into an existing entity, so that one instance can be reused
+	 * for many rows. Fields whose column is null in the row are set to null (0 or false for primitives).
+	 */
+	T map(SqlCursor cursor, T entity) {
+		fill(cursor, entity, true);
+		return entity;
+	}
+
+	private void fill(SqlCursor cursor, Object entity, boolean clearNulls) {
+		if (mapperIndexes != null) {
+			metadata.mapper().read(cursor, mapperIndexes, entity, clearNulls);
+			return;
+		}
+		for (int i = 0; i < columns.length; i++) {
+			int index = indexes[i];
+			try {
+				if (!cursor.isNull(index)) read(columns[i], cursor, index, entity);
+				else if (clearNulls) clear(columns[i], entity);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException("Cannot set " + columns[i].field, e);
+			}
+		}
+	}
+
+	/**
+	 * Maps all the remaining rows of the cursor and closes it.
+	 */
+	List<T> mapAll(SqlCursor cursor) {
+		List<T> entities = new ArrayList<T>();
+		try {
+			while (cursor.moveToNext()) {
+				entities.add(map(cursor));
+			}
+		} finally {
+			cursor.close();
+		}
+		return entities;
+	}
+
+	private static void clear(EntityMetadata.Column column, Object entity) throws IllegalAccessException {
+		if (!column.primitive) column.field.set(entity, null);
+		else if (column.type == EntityMetadata.ColumnType.BOOLEAN) column.field.setBoolean(entity, false);
+		else if (column.type == EntityMetadata.ColumnType.CHAR) column.field.setChar(entity, (char) 0);
+		else column.field.set(entity, column.type.convert(Integer.valueOf(0), null));
+	}
+
+	private static void read(EntityMetadata.Column column, SqlCursor cursor, int index, Object entity) throws IllegalAccessException {
+		switch (column.type) {
+		case INT:
+			if (column.primitive) column.field.setInt(entity, cursor.getInt(index));
+			else column.field.set(entity, Integer.valueOf(cursor.getInt(index)));
+			break;
+		case LONG:
+			if (column.primitive) column.field.setLong(entity, cursor.getLong(index));
+			else column.field.set(entity, Long.valueOf(cursor.getLong(index)));
+			break;
+		case SHORT:
+			if (column.primitive) column.field.setShort(entity, cursor.getShort(index));
+			else column.field.set(entity, Short.valueOf(cursor.getShort(index)));
+			break;
+		case BYTE:
+			if (column.primitive) column.field.setByte(entity, (byte) cursor.getInt(index));
+			else column.field.set(entity, Byte.valueOf((byte) cursor.getInt(index)));
+			break;
+		case FLOAT:
+			if (column.primitive) column.field.setFloat(entity, cursor.getFloat(index));
+			else column.field.set(entity, Float.valueOf(cursor.getFloat(index)));
+			break;
+		case DOUBLE:
+			if (column.primitive) column.field.setDouble(entity, cursor.getDouble(index));
+			else column.field.set(entity, Double.valueOf(cursor.getDouble(index)));
+			break;
+		case BOOLEAN:
+			boolean value = MapperSupport.readBoolean(cursor, index);
+			if (column.primitive) column.field.setBoolean(entity, value);
+			else column.field.set(entity, Boolean.valueOf(value));
+			break;
+		case CHAR:
+			String chars = cursor.getString(index);
+			if (chars.length() == 0) break;
+			if (column.primitive) column.field.setChar(entity, chars.charAt(0));
+			else column.field.set(entity, Character.valueOf(chars.charAt(0)));
+			break;
+		case STRING:
+			column.field.set(entity, cursor.getString(index));
+			break;
+		case BYTES:
+			column.field.set(entity, cursor.getBlob(index));
+			break;
+		case DATE:
+			column.field.set(entity, MapperSupport.readDate(cursor, index));
+			break;
+		case ENUM:
+			column.field.set(entity, readEnum(column, cursor.getString(index)));
+			break;
+		default:
+			column.field.set(entity, GSON.fromJson(new JsonPrimitive(cursor.getString(index)), column.field.getType()));
+			break;
+		}
+	}
+
+	/**
+	 * Enums are written by name, older records may have them as their toString().
+	 */
+	private static Object readEnum(EntityMetadata.Column column, String text) {
+		for (Enum<?> constant : column.constants) {
+			if (constant.name().equals(text)) return constant;
+		}
+		for (Enum<?> constant : column.constants) {
+			if (constant.toString().equals(text)) return constant;
+		}
+		return GSON.fromJson(new JsonPrimitive(text), column.field.getType());
+	}
+}
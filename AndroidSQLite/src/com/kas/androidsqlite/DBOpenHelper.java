@@ -1,25 +1,52 @@
 package com.kas.androidsqlite;
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
-import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 /**
  * Created by Kassim on 10/3/13.
  */
 public class DBOpenHelper extends SQLiteOpenHelper {
 
+    /**
+     * Receives the progress of copying the database from the assets.
+     */
+    public interface InstallListener {
+        /**
+         * @param copied number of bytes of the database written so far
+         * @param total size of the database in bytes, or -1 if it is not known because the asset is compressed
+         */
+        void onProgress(long copied, long total);
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /** the progress is reported every time this many bytes more have been copied */
+    private static final long PROGRESS_STEP = 1024 * 1024;
+
 	private String DB_PATH;
     private String DB_NAME;
     private final Context myContext;
+    private final int assetVersion;
+    private final Migrations migrations;
 
     /**
      * 
@@ -27,26 +54,101 @@ public class DBOpenHelper extends SQLiteOpenHelper {
      * @param DB_NAME Database name in the assets folder for example data.db 
      */
     public DBOpenHelper (Context context, String DB_NAME) {
+        this(context, DB_NAME, 1);
+    }
+
+    /**
+     * 
+     * @param context
+     * @param DB_NAME Database name in the assets folder for example data.db. It can be compressed as data.db.gz or data.db.zip.
+     * @param assetVersion version of the database in the assets. Increase it when the app ships a new database that must replace the installed one.
+     */
+    public DBOpenHelper (Context context, String DB_NAME, int assetVersion) {
+        this(context, DB_NAME, assetVersion, null);
+    }
+
+    /**
+     * 
+     * @param context
+     * @param DB_NAME Database name in the assets folder for example data.db. It can be compressed as data.db.gz or data.db.zip.
+     * @param assetVersion version of the database in the assets. Increase it when the app ships a new database.
+     * @param migrations how an installed database older than assetVersion is upgraded, can be null to always replace it with the new one
+     */
+    public DBOpenHelper (Context context, String DB_NAME, int assetVersion, Migrations migrations) {
         super(context, DB_NAME, null, 1);
         this.myContext = context;
         this.DB_NAME = DB_NAME;
+        this.assetVersion = assetVersion;
+        this.migrations = migrations;
         DB_PATH = myContext.getApplicationContext().getFilesDir().getPath().replace("files", "databases/");
     }
 
     /**
-     * 
-     * @throws IOException
+     * Copies the database from the assets if it is not installed yet, or if the installed one is older than the asset version.
+     * @throws IOException throws exception if the database is not in the assets folder or could not be copied
      */
     public void createDatabase() throws IOException {
+        createDatabase(null);
+    }
+
+    /**
+     * Copies the database from the assets if it is not installed yet. If the installed one is older than the asset version it is upgraded with the migrations,
+     * or replaced by the one in the assets if there are none for every version in between, keeping the preserved tables.
+     * The copy is written to a temporary file that replaces the database only once it is complete, so a copy that is interrupted is started again the next time.
+     * The version is kept in the database itself, as <code>PRAGMA user_version</code>, so it is always the version of the file that is installed.
+     * A database without one, for example installed by an older version of this library, is replaced by the one in the assets.
+     * @param listener receives the progress of the copy, can be null
+     * @throws IOException throws exception if the database is not in the assets folder or could not be copied
+     */
+    public void createDatabase(InstallListener listener) throws IOException {
+        File file = new File(DB_PATH + DB_NAME);
+
+        if (file.exists()) {
+            int installedVersion = installedVersion(file);
+            if (installedVersion >= assetVersion) return;
+
+            List<Migration> steps = migrations == null ? null : migrations.path(installedVersion, assetVersion);
+            if (steps != null) {
+                migrate(file, steps);
+                return;
+            }
+        }
+
+        List<String> preserved = migrations == null ? Collections.<String>emptyList() : migrations.getPreservedTables();
+        copyDataBase(file, file.exists() ? preserved : Collections.<String>emptyList(), listener);
+    }
 
-        if (!isDatabaseExist()) {
-            this.getReadableDatabase();
+    /**
+     * Returns the <code>PRAGMA user_version</code> of the installed database, 0 if it was never set.
+     */
+    private static int installedVersion(File file) {
+        SQLiteDatabase database = SQLiteDatabase.openDatabase(file.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        try {
+            return database.getVersion();
+        } finally {
+            database.close();
+        }
+    }
 
+    /**
+     * Runs the migration steps on the installed database in one transaction, so that it is either fully upgraded or left as it was.
+     * The new version is set in the same transaction.
+     */
+    private void migrate(File file, List<Migration> steps) throws IOException {
+        SQLiteDatabase database = SQLiteDatabase.openDatabase(file.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+        try {
+            database.beginTransaction();
             try {
-                copyDataBase();
-            } catch (IOException e) {
-                throw new Error("Error copying database");
+                for (Migration step : steps) {
+                    step.migrate(myContext, database);
+                }
+                database.setVersion(assetVersion);
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
             }
+        } finally {
+            database.close();
         }
     }
 
@@ -55,53 +157,224 @@ public class DBOpenHelper extends SQLiteOpenHelper {
      * @return returns true if it was deleted
      */
     public boolean deleteDatabase() {
-    	if(isDatabaseExist()){
-    		String outFileName = DB_PATH + DB_NAME;
-        	File file = new File(outFileName);
+    	File file = new File(DB_PATH + DB_NAME);
+    	if(file.exists()){
+    		deleteJournals(file);
         	return file.delete();
     	}
     	return false;
     }
     
-    private void copyDataBase() throws IOException {
+    private void copyDataBase(File file, List<String> preservedTables, InstallListener listener) throws IOException {
+        File directory = file.getParentFile();
+        if (!directory.exists() && !directory.mkdirs()) throw new IOException("Cannot create " + directory);
+        File temp = new File(file.getPath() + ".tmp");
 
-        // Open your local db as the input stream
-        InputStream myInput = myContext.getAssets().open(DB_NAME);
+        FileOutputStream myOutput = new FileOutputStream(temp);
+        try {
+            AssetFileDescriptor descriptor = openUncompressed();
+            if (descriptor != null) {
+                try {
+                    transfer(descriptor, myOutput.getChannel(), listener);
+                } finally {
+                    descriptor.close();
+                }
+            } else {
+                InputStream myInput = openCompressed();
+                try {
+                    copy(myInput, myOutput, listener);
+                } finally {
+                    myInput.close();
+                }
+            }
+            // on disk before it is renamed, so the database is never a partly written file
+            myOutput.getFD().sync();
+        } catch (IOException e) {
+            myOutput.close();
+            temp.delete();
+            throw e;
+        }
+        myOutput.close();
 
-        // Path to the just created empty db
-        String outFileName = DB_PATH + DB_NAME;
+        try {
+            if (!preservedTables.isEmpty()) copyTables(temp, file, preservedTables);
+            // the version is in the file that is renamed, so the database and its version are installed together
+            setVersion(temp, assetVersion);
+        } catch (RuntimeException e) {
+            temp.delete();
+            throw e;
+        }
 
-        // Open the empty db as the output stream
-        OutputStream myOutput = new FileOutputStream(outFileName);
+        // the journals of the installed database hold nothing once it is checkpointed, so losing them before the rename loses no rows
+        if (file.exists()) checkpoint(file);
+        deleteJournals(file);
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Cannot rename " + temp + " to " + file);
+        }
+    }
 
-        // transfer bytes from the inputfile to the outputfile
-        byte[] buffer = new byte[1024];
-        int length;
-        while ((length = myInput.read(buffer)) > 0) {
-            myOutput.write(buffer, 0, length);
+    /**
+     * Copies the rows of the tables from the installed database into the new one, creating the tables the new one doesn't have.
+     * Only the columns both tables have are copied.
+     */
+    private static void copyTables(File newDatabase, File installed, List<String> tables) {
+        SQLiteDatabase database = SQLiteDatabase.openDatabase(newDatabase.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+        try {
+            database.execSQL("ATTACH DATABASE ? AS installed", new Object[] { installed.getPath() });
+            database.beginTransaction();
+            try {
+                for (String table : tables) {
+                    List<String> columns = columns(database, "installed", table);
+                    if (columns.isEmpty()) continue;
+                    List<String> newColumns = columns(database, "main", table);
+                    if (newColumns.isEmpty()) {
+                        database.execSQL(DatabaseUtils.stringForQuery(database,
+                                "SELECT sql FROM installed.sqlite_master WHERE type = 'table' AND name = ?", new String[] { table }));
+                    } else {
+                        columns.retainAll(newColumns);
+                    }
+
+                    StringBuilder names = new StringBuilder();
+                    for (String column : columns) {
+                        if (names.length() > 0) names.append(',');
+                        names.append('"').append(column).append('"');
+                    }
+                    database.execSQL("DELETE FROM main.\"" + table + "\"");
+                    database.execSQL("INSERT INTO main.\"" + table + "\" (" + names + ") SELECT " + names + " FROM installed.\"" + table + "\"");
+                }
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+            database.execSQL("DETACH DATABASE installed");
+        } finally {
+            database.close();
         }
+    }
 
-        // Close the streams
-        myOutput.flush();
-        myOutput.close();
-        myInput.close();
+    private static void setVersion(File file, int version) {
+        SQLiteDatabase database = SQLiteDatabase.openDatabase(file.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+        try {
+            database.setVersion(version);
+        } finally {
+            database.close();
+        }
+    }
+
+    private static List<String> columns(SQLiteDatabase database, String schema, String table) {
+        List<String> columns = new ArrayList<String>();
+        Cursor cursor = database.rawQuery("PRAGMA " + schema + ".table_info(\"" + table + "\")", null);
+        try {
+            int name = cursor.getColumnIndexOrThrow("name");
+            while (cursor.moveToNext()) {
+                columns.add(cursor.getString(name));
+            }
+        } finally {
+            cursor.close();
+        }
+        return columns;
     }
 
-    private boolean isDatabaseExist() {
-        SQLiteDatabase sqliteDatabase = null;
+    /**
+     * Returns the descriptor of the database in the assets, or null if it is stored compressed.
+     */
+    private AssetFileDescriptor openUncompressed() throws IOException {
+        AssetFileDescriptor descriptor;
+        try {
+            descriptor = myContext.getAssets().openFd(DB_NAME);
+        } catch (FileNotFoundException e) {
+            // compressed assets can't be opened as a file descriptor
+            return null;
+        }
+        if (descriptor.getLength() >= 0) return descriptor;
+        descriptor.close();
+        return null;
+    }
+
+    /**
+     * Opens DB_NAME, DB_NAME.gz or DB_NAME.zip from the assets as a stream of the uncompressed database.
+     */
+    private InputStream openCompressed() throws IOException {
+        try {
+            return myContext.getAssets().open(DB_NAME);
+        } catch (FileNotFoundException e) {
+        }
+        try {
+            return new GZIPInputStream(myContext.getAssets().open(DB_NAME + ".gz"), BUFFER_SIZE);
+        } catch (FileNotFoundException e) {
+        }
+        ZipInputStream zip = new ZipInputStream(myContext.getAssets().open(DB_NAME + ".zip"));
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            if (!entry.isDirectory()) return zip;
+        }
+        zip.close();
+        throw new FileNotFoundException(DB_NAME + ".zip is empty");
+    }
 
+    /**
+     * Copies an uncompressed asset by transferring straight from the APK to the file, without going through a buffer.
+     */
+    private static void transfer(AssetFileDescriptor descriptor, FileChannel out, InstallListener listener) throws IOException {
+        FileInputStream in = new FileInputStream(descriptor.getFileDescriptor());
         try {
-            String myPath = DB_PATH + DB_NAME;
-            sqliteDatabase = SQLiteDatabase.openDatabase(myPath, null, SQLiteDatabase.OPEN_READONLY);
+            FileChannel channel = in.getChannel();
+            long start = descriptor.getStartOffset();
+            long total = descriptor.getLength();
+            long copied = 0;
+            while (copied < total) {
+                long count = channel.transferTo(start + copied, Math.min(PROGRESS_STEP, total - copied), out);
+                if (count <= 0) throw new IOException("Unexpected end of the asset " + copied + " of " + total);
+                copied += count;
+                if (listener != null) listener.onProgress(copied, total);
+            }
+        } finally {
+            in.close();
+        }
+    }
 
-        } catch (SQLiteException e) {
-        	sqliteDatabase = null;
+    private static void copy(InputStream in, FileOutputStream out, InstallListener listener) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long copied = 0;
+        long reported = 0;
+        int length;
+        while ((length = in.read(buffer)) > 0) {
+            out.write(buffer, 0, length);
+            copied += length;
+            if (listener != null && copied - reported >= PROGRESS_STEP) {
+                listener.onProgress(copied, -1);
+                reported = copied;
+            }
         }
+        if (listener != null && copied != reported) listener.onProgress(copied, -1);
+    }
 
-        if (sqliteDatabase != null) {
-        	sqliteDatabase.close();
+    /**
+     * Moves the committed rows of the write-ahead log into the database file and empties the log. Opening the database
+     * also rolls back what a hot rollback journal left half written.
+     */
+    private static void checkpoint(File file) {
+        SQLiteDatabase database = SQLiteDatabase.openDatabase(file.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+        try {
+            Cursor cursor = database.rawQuery("PRAGMA wal_checkpoint(TRUNCATE)", null);
+            try {
+                cursor.moveToFirst();
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            database.close();
         }
-        return sqliteDatabase != null ? true : false;
+    }
+
+    /**
+     * Deletes the journal files of the database, they don't belong to the one that replaces it.
+     */
+    private static void deleteJournals(File file) {
+        new File(file.getPath() + "-journal").delete();
+        new File(file.getPath() + "-wal").delete();
+        new File(file.getPath() + "-shm").delete();
     }
 
     public SQLiteDatabase openDataBase() throws SQLException {
@@ -110,6 +383,14 @@ public class DBOpenHelper extends SQLiteOpenHelper {
         return SQLiteDatabase.openDatabase(myPath, null, SQLiteDatabase.OPEN_READWRITE);
     }
 
+    /**
+     * Opens a connection that can only read, used to read in parallel with the writer in WAL mode
+     */
+    public SQLiteDatabase openReadOnlyDataBase() throws SQLException {
+        String myPath = DB_PATH + DB_NAME;
+        return SQLiteDatabase.openDatabase(myPath, null, SQLiteDatabase.OPEN_READONLY);
+    }
+
     @Override
     public void onCreate(SQLiteDatabase db) {
     }
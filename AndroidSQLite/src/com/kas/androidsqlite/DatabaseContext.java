@@ -1,62 +1,274 @@
 package com.kas.androidsqlite;
 
 import java.io.IOException;
-import java.lang.reflect.Field;
-import java.lang.reflect.ParameterizedType;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import android.content.ContentValues;
 import android.content.Context;
-import android.database.AbstractWindowedCursor;
-import android.database.Cursor;
-import android.database.CursorWindow;
-import android.database.sqlite.SQLiteDatabase;
-
-import com.google.gson.Gson;
 
 /**
  * Created by Kassim on 10/3/13.
  */
 public class DatabaseContext {
 	
-	private DBOpenHelper dbhelper;
-	private SQLiteDatabase database;
+	private final MeteredBackend backend;
+	private SqlConnection database;
 	private boolean isAutoOpenAndClose;
+	private boolean isOpenedByUser;
+	private int bulkChunkSize = BulkInserter.DEFAULT_CHUNK_SIZE;
+	private final StatementCache statements = new StatementCache(StatementCache.DEFAULT_SIZE);
+	private final ResultCache results = new ResultCache(ResultCache.DEFAULT_MAX_ROWS);
+	private final ConnectionManager connections;
+	private final ThreadLocal<Session> sessions = new ThreadLocal<Session>();
+	private final ThreadLocal<IdentityMap> units = new ThreadLocal<IdentityMap>();
+	private final ReentrantLock writeLock = new ReentrantLock(true);
+	private volatile ReaderPool readers;
+	private int readerPoolSize;
 
 /**
  * 
  * @param context
  * @param DB_NAME Database name in the assets folder for example data.db
- * @param isAutoOpenAndClose if set to true, it will open the database before every operation and closes it after automatically
+ * @param isAutoOpenAndClose if set to true, it will open the database before every operation and closes it after automatically.
+ * Operations running at the same time, or one inside another, share the same connection, which is closed once it has not been used for {@link #setIdleTimeout(long)}.
  * @throws IOException throws exception if the DB_NAME passed not found in the assets folder.
  * @N.B BestPractice I recommend you to have one instance of this class through out your application. Hopefully, that way you won't have conflicts and everything would would work synchronously.
+ * Writes from different threads run one at a time. Reads run at the same time as each other and as the writes only after {@link #enableWriteAheadLogging(int)}.
  */
 	public DatabaseContext(Context context, String DB_NAME, boolean isAutoOpenAndClose) throws IOException {
-		dbhelper = new DBOpenHelper(context, DB_NAME);
-		dbhelper.createDatabase();
+		this(context, DB_NAME, isAutoOpenAndClose, 1, null);
+	}
+
+/**
+ * 
+ * @param context
+ * @param DB_NAME Database name in the assets folder for example data.db. It can be compressed as data.db.gz or data.db.zip, which makes the APK smaller but the first start slower.
+ * @param isAutoOpenAndClose if set to true, it will open the database before every operation and closes it after automatically.
+ * @param assetVersion version of the database in the assets. Increase it when the app ships a new database that must replace the installed one.
+ * @param listener receives the progress of copying the database from the assets the first time, can be null
+ * @throws IOException throws exception if the DB_NAME passed not found in the assets folder.
+ * @N.B The database is copied in the constructor the first time, so call it on a background thread if the database is large.
+ */
+	public DatabaseContext(Context context, String DB_NAME, boolean isAutoOpenAndClose, int assetVersion, DBOpenHelper.InstallListener listener) throws IOException {
+		this(context, DB_NAME, isAutoOpenAndClose, assetVersion, null, listener);
+	}
+
+/**
+ * 
+ * @param context
+ * @param DB_NAME Database name in the assets folder for example data.db. It can be compressed as data.db.gz or data.db.zip.
+ * @param isAutoOpenAndClose if set to true, it will open the database before every operation and closes it after automatically.
+ * @param assetVersion version of the database in the assets. Increase it when the app ships a new database.
+ * @param migrations how a database installed by an older version of the app is upgraded to assetVersion without copying the new one, or which of its tables are kept when it is copied. Can be null.
+ * @param listener receives the progress of copying the database from the assets, can be null
+ * @throws IOException throws exception if the DB_NAME passed not found in the assets folder.
+ */
+	public DatabaseContext(Context context, String DB_NAME, boolean isAutoOpenAndClose, int assetVersion, Migrations migrations, DBOpenHelper.InstallListener listener) throws IOException {
+		this(install(context, DB_NAME, assetVersion, migrations, listener), isAutoOpenAndClose);
+	}
+
+/**
+ * Runs on any SQLite database the backend opens, for example through JDBC outside Android. The database must already have its tables.
+ * @param backend opens the connections
+ * @param isAutoOpenAndClose if set to true, it will open the database before every operation and closes it after automatically.
+ */
+	public DatabaseContext(SqlBackend backend, boolean isAutoOpenAndClose) {
+		if (backend == null) throw new IllegalArgumentException("backend must not be null");
+		this.backend = new MeteredBackend(backend);
 		this.isAutoOpenAndClose=isAutoOpenAndClose;
+		connections = new ConnectionManager(this.backend, statements);
+	}
+	
+	private static SqlBackend install(Context context, String DB_NAME, int assetVersion, Migrations migrations, DBOpenHelper.InstallListener listener) throws IOException {
+		DBOpenHelper dbhelper = new DBOpenHelper(context, DB_NAME, assetVersion, migrations);
+		dbhelper.createDatabase(listener);
+		return new AndroidBackend(dbhelper);
+	}
+
+	/**
+	 * Opens the connection with the database. It stays open until close is called.
+	 */
+	public synchronized void open() {
+		if (isOpenedByUser) return;
+		database = connections.acquire();
+		isOpenedByUser = true;
+	}
+
+	/**
+	* Closes the connection with the database. If operations are still using it (for example an iterator that is not closed yet), it is closed when they are done.
+	 */
+	public synchronized void close() {
+
+		if (isOpenedByUser) {
+			isOpenedByUser = false;
+			connections.release();
+		}
+		connections.closeIfUnused();
+		ReaderPool pool = readers;
+		if (pool != null) {
+			// the readers are opened again when they are needed
+			pool.close();
+			readers = new ReaderPool(backend, readerPoolSize);
+		}
+		backend.close();
+	}
+	
+	/**
+	 * Switches the database to write-ahead logging so that reads don't wait for writes. The writes go through a single writer connection, one at a time in the order they were started,
+	 * and the reads run in parallel on a pool of read-only connections. Readers see the last committed data, so a read that runs while a write is in progress does not see that write.
+	 * Needs API level 11 on Android, on older versions it does nothing and returns false.
+	 * Each iterator that is not closed holds one reader, so close them when done.
+	 * @param readerPoolSize number of read-only connections, for example 3
+	 * @return returns true if write-ahead logging is enabled
+	 * @ForExample
+	 * databaseContext.enableWriteAheadLogging(3);
+	 */
+	public synchronized boolean enableWriteAheadLogging(int readerPoolSize) {
+		if (readers != null) disableWriteAheadLogging();
+		
+		ReaderPool pool = new ReaderPool(backend, readerPoolSize);
+		writeLock.lock();
+		try {
+			connections.acquire();
+			try {
+				if (!connections.setWriteAheadLogging(true)) {
+					connections.setWriteAheadLogging(false);
+					return false;
+				}
+			} finally {
+				connections.release();
+			}
+		} finally {
+			writeLock.unlock();
+		}
+		this.readerPoolSize = readerPoolSize;
+		readers = pool;
+		return true;
+	}
+	
+	/**
+	 * Switches the database back to the default journal mode. Reads use the same connection as the writes again.
+	 */
+	public synchronized void disableWriteAheadLogging() {
+		ReaderPool pool = readers;
+		if (pool == null) return;
+		readers = null;
+		pool.close();
+		writeLock.lock();
+		try {
+			connections.setWriteAheadLogging(false);
+		} finally {
+			writeLock.unlock();
+		}
+	}
+	
+	/**
+	 * Sets how long the connection stays open after the last operation when isAutoOpenAndClose is true. An operation that starts within that time reuses the connection instead of opening the database again.
+	 * @param idleTimeoutMillis time in milliseconds, default is 5000. 0 closes the connection as soon as no operation uses it.
+	 */
+	public void setIdleTimeout(long idleTimeoutMillis) {
+		connections.setIdleTimeout(idleTimeoutMillis);
+	}
+	
+	public long getIdleTimeout() {
+		return connections.getIdleTimeout();
+	}
+
+	/**
+	 * Sets the listener that receives the time each operation spent compiling, running and mapping, and the plan of the slow queries.
+	 * It takes effect from the next operation, on the connections already open too. Without a listener, the default, nothing is measured.
+	 * Iterators are not reported as operations, only their slow queries are.
+	 * @param listener the listener, or null to stop measuring
+	 * @ForExample
+	 * databaseContext.setListener(listener);
+	 */
+	public void setListener(DatabaseListener listener) {
+		backend.setListener(listener);
+	}
+
+	public DatabaseListener getListener() {
+		return backend.getListener();
 	}
 
 	/**
-	 * Opens the connection with the database
+	 * Sets how long a query or statement must run for the listener to receive it with its query plan.
+	 * @param millis time in milliseconds, default is 100. A negative value reports no slow queries.
 	 */
-	public void open() {
-		database = dbhelper.openDataBase();
+	public void setSlowQueryThreshold(long millis) {
+		backend.setSlowQueryThreshold(millis);
+	}
+
+	public long getSlowQueryThreshold() {
+		return backend.getSlowQueryThreshold();
 	}
 
 	/**
-	* Closes the connection with the database
+	 * Checks the database against the entities, and the entities in their list fields: that their tables and columns exist,
+	 * and that the columns named after another table of the database are indexed. Those are the columns the list fields are loaded and deleted by,
+	 * and the ones subQuery filters the join table by. Without an index each of those queries reads the whole table.
+	 * A missing index is named Table_Column, with a number appended if the database already has an index of that name.
+	 * The join table of subQuery is only known when it is called, so it is not found through the list fields: its entity must be passed explicitly,
+	 * for example MeetingAttendee.class, or it is not checked.
+	 * Worth calling once at startup, for example in debug builds, or after a migration.
+	 * @param createMissingIndexes if true, the missing indexes are created
+	 * @param types the entity classes, for example Employee.class, and the join entities passed to subQuery as fromEntity
+	 * @return returns what is missing
+	 * @ForExample <pre>
+	 * <code>
+	 *	SchemaReport report = databaseContext.inspectSchema(true, Department.class, MeetingAttendee.class);
+	 *	if (!report.isValid()) Log.w("db", report.toString());
+	 * </code>
+	 * </pre>
 	 */
-	public void close() {
+	public SchemaReport inspectSchema(boolean createMissingIndexes, Class<?>... types) {
 
-		dbhelper.close();
+		begin("inspectSchema", createMissingIndexes);
+		try {
+			return new SchemaInspector(db()).inspect(types, createMissingIndexes);
+		} finally {
+			end();
+		}
+	}
+	
+	/**
+	 * Starts a unit of work on the current thread. Until endUnitOfWork is called, every record read on this thread is returned as the same instance however many times it is read,
+	 * and find returns that instance without querying the database again. update and delete forget the records they change.
+	 * update on a record read in the unit of work writes only the columns changed since it was read, including ones set to null, and skips records that did not change, also in the list fields.
+	 * Records read with only some of their properties and records changed with rawQuery are not tracked.
+	 * Can be nested, the unit of work ends with the outermost endUnitOfWork.
+	 * @ForExample <pre>
+	 * <code>
+	 * databaseContext.beginUnitOfWork();
+	 * try {
+	 *	List[Department] departments = databaseContext.getAll(new Department(), true);
+	 *	Employee employee = databaseContext.find(employee, false); // the same instance as in departments, if it is one of them
+	 * } finally {
+	 *	databaseContext.endUnitOfWork();
+	 * }
+	 * </code>
+	 * </pre>
+	 */
+	public void beginUnitOfWork() {
+		IdentityMap identities = units.get();
+		if (identities != null) identities.depth++;
+		else units.set(new IdentityMap());
+	}
+	
+	/**
+	 * Ends the unit of work started on the current thread with beginUnitOfWork.
+	 */
+	public void endUnitOfWork() {
+		IdentityMap identities = units.get();
+		if (identities == null) throw new IllegalStateException("No unit of work was started on this thread");
+		if (--identities.depth == 0) units.remove();
 	}
 
 	/**
@@ -77,28 +289,20 @@ public class DatabaseContext {
 	    *}</code>
 	    *</pre>
 	    * @param entity Entity to be added. The name of the class must match the name of the table in the database.
-	    * @return T returns the added Entity with id assigned .
+	    * @return T returns the added Entity with id assigned . If it fails, nothing is added, its id is set back and the exception of the database is thrown.
 	    */
 	
 	public <T> T add(T entity ) {
 		
-		if(isAutoOpenAndClose)
-			open();
-		
-		HashMap<String, List<Object>> externalObjects = new HashMap<String, List<Object>>();
-		
-		long insertid = database.insert(entity.getClass().getSimpleName(), null,getContentValues(entity, externalObjects));	
-		
-		setObjectField(entity,"id", insertid);
-		for (Entry<String, List<Object>> entry : externalObjects.entrySet()) {
-			List<?extends Object> ext = addAll(entry.getValue(), entity.getClass().getSimpleName(),insertid);
-			setObjectField(entity, entry.getKey(), ext);
-		}	
-		
-		if(isAutoOpenAndClose)
-			close();
-		
-		return entity;
+		begin("add", true);
+		try {
+			new BulkInserter(db(), statements, bulkChunkSize).insertAll(Collections.singletonList(entity), null, true);
+			
+			return entity;
+		} finally {
+			end();
+			invalidateResults(Collections.singletonList(entity));
+		}
 	}
 	
 	/**
@@ -106,48 +310,159 @@ public class DatabaseContext {
 	 * @param entity Entity to be added. The name of the class must match the name of the table in the database.
 	 * @param IdPropertyName pass the primary key name. This is in case the primary key is named other than "id" or "Id"
 	 * @param isAutoIncrement set true if the primary key is auto-increment
-	 * @return T returns the added Entity with id assigned .
+	 * @return T returns the added Entity with id assigned . If it fails, nothing is added, its id is set back and the exception of the database is thrown.
+	 * @deprecated mark the primary key with {@link Id} and use {@link #add(Object)}
 	 */
+	@Deprecated
 	public <T> T add(T entity, String IdPropertyName, boolean isAutoIncrement) {
 		
-		if(isAutoOpenAndClose)
-			open();
-		
-		HashMap<String, List<Object>> externalObjects = new HashMap<String, List<Object>>();
-		
-		long insertid = database.insert(entity.getClass().getSimpleName(), null, getContentValues(entity, IdPropertyName,isAutoIncrement, externalObjects));	
-		
-		setObjectField(entity, IdPropertyName, insertid);
-		for (Entry<String, List<Object>> entry : externalObjects.entrySet()) {
-			List<?extends Object> ext = addAll(entry.getValue(), entity.getClass().getSimpleName(),insertid);
-			setObjectField(entity, entry.getKey(), ext);
+		begin("add", true);
+		try {
+			new BulkInserter(db(), statements, bulkChunkSize).insertAll(Collections.singletonList(entity), IdPropertyName, isAutoIncrement);
+			
+			return entity;
+		} finally {
+			end();
+			invalidateResults(Collections.singletonList(entity));
 		}
-		
-		if(isAutoOpenAndClose)
-			close();
-		
-		return entity;
 	}
 	
 	/**
 	 * Adds list of entities(records) in a table in the database.
+	 * All the entities and their list fields are added in one transaction, which is committed every {@link #setBulkChunkSize(int)} rows.
+	 * If a row fails, its chunk is rolled back, the ids assigned in it are set back and the exception of the database is thrown. The chunks committed before it stay added.
 	 * @param entities to be added. The name of the class must match the name of the table in the database.
 	 * @return returns list of added entities.
 	 */
 	public <T> List<T> addAll (List<T> entities){
-		for (T entity : entities) {
-			add(entity);
-		}	
-		return entities;		
+		
+		begin("addAll", true);
+		try {
+			new BulkInserter(db(), statements, bulkChunkSize).insertAll(entities, null, true);
+			
+			return entities;		
+		} finally {
+			end();
+			invalidateResults(entities);
+		}
 	}
 	
+	/**
+	 * Adds list of entities(records) in a table in the database.
+	 * All the entities and their list fields are added in one transaction, which is committed every {@link #setBulkChunkSize(int)} rows.
+	 * If a row fails, its chunk is rolled back, the ids assigned in it are set back and the exception of the database is thrown. The chunks committed before it stay added.
+	 * @param entities to be added. The name of the class must match the name of the table in the database.
+	 * @param IdPropertyName pass the primary key name. This is in case the primary key is named other than "id" or "Id"
+	 * @param isAutoIncrement set true if the primary key is auto-increment
+	 * @return returns list of added entities.
+	 * @deprecated mark the primary key with {@link Id} and use {@link #addAll(List)}
+	 */
+	@Deprecated
 	public <T> List<T> addAll (List<T> entities, String IdPropertyName, boolean isAutoIncrement){
-		for (T entity : entities) {
-			add(entity, IdPropertyName, isAutoIncrement);
-		}	
-		return entities;		
+		
+		begin("addAll", true);
+		try {
+			new BulkInserter(db(), statements, bulkChunkSize).insertAll(entities, IdPropertyName, isAutoIncrement);
+			
+			return entities;		
+		} finally {
+			end();
+			invalidateResults(entities);
+		}
+	}
+	
+	/**
+	 * Sets the number of rows added in one transaction by add and addAll. After that many rows the transaction is committed and a new one is started, so that a huge list doesn't hold the database locked until it is all added.
+	 * An entity is always added in the same transaction as its list fields.
+	 * @param bulkChunkSize number of rows per transaction, default is 500
+	 */
+	public void setBulkChunkSize(int bulkChunkSize) {
+		this.bulkChunkSize = bulkChunkSize;
+	}
+	
+	public int getBulkChunkSize() {
+		return bulkChunkSize;
+	}
+	
+	/**
+	 * Sets how many compiled statements (inserts, updates and deletes) are kept for reuse. The least recently used statement is closed when there are more.
+	 * @param statementCacheSize number of statements to keep, default is 32. 0 disables the cache.
+	 */
+	public void setStatementCacheSize(int statementCacheSize) {
+		statements.setMaxSize(statementCacheSize);
+	}
+	
+	public int getStatementCacheSize() {
+		return statements.getMaxSize();
+	}
+	
+	/**
+	 * @return returns how many times a compiled statement was reused from the cache.
+	 */
+	public long getStatementCacheHitCount() {
+		return statements.getHitCount();
+	}
+	
+	/**
+	 * @return returns how many times a statement had to be compiled because it was not in the cache.
+	 */
+	public long getStatementCacheMissCount() {
+		return statements.getMissCount();
 	}
 		
+	/**
+	 * Caches the results of getAll and findAll on the table of the passed class, so that reading the same records again returns them without querying the database.
+	 * The cached results of a table are dropped when anything is added to, updated in or deleted from it through this DatabaseContext, or from a table in their list fields.
+	 * Use it for tables that are read often and rarely change. The records returned from the cache are the same instances every time, so don't change them.
+	 * @param type the class of the table, for example Country.class
+	 * @param timeToLiveMillis how long a result stays cached. 0 keeps it until the table changes.
+	 * @ForExample
+	 * databaseContext.cacheResults(Country.class, 10 * 60 * 1000);
+	 */
+	public void cacheResults(Class<?> type, long timeToLiveMillis) {
+		results.enable(EntityMetadata.of(type).tableName, timeToLiveMillis);
+	}
+	
+	/**
+	 * Stops caching the results of the table of the passed class and drops the ones cached.
+	 */
+	public void stopCachingResults(Class<?> type) {
+		results.disable(EntityMetadata.of(type).tableName);
+	}
+	
+	/**
+	 * Drops all the cached results. Call it after changing the database with rawQuery or outside this DatabaseContext.
+	 */
+	public void clearResultCache() {
+		results.clear();
+	}
+	
+	/**
+	 * Sets the number of records the result cache holds at most, counting every result as one more record. The least recently used results are dropped first.
+	 * @param maxRows default is 2000
+	 */
+	public void setResultCacheSize(int maxRows) {
+		results.setMaxRows(maxRows);
+	}
+	
+	public int getResultCacheSize() {
+		return results.getMaxRows();
+	}
+	
+	/**
+	 * @return returns how many times a result was returned from the result cache.
+	 */
+	public long getResultCacheHitCount() {
+		return results.getHitCount();
+	}
+	
+	/**
+	 * @return returns how many times a result of a cached table had to be read from the database.
+	 */
+	public long getResultCacheMissCount() {
+		return results.getMissCount();
+	}
+	
 	/**
 	 * Gets all the records in a table in the database.
 	 * @param entity only pass instance of a class, for example new Employee(). Do not pass the class itself. The name of its class must match the name of the table in the database.
@@ -157,20 +472,21 @@ public class DatabaseContext {
 	 * getAll(new Employee(), true);
 	 */
 	public <T> List<T> getAll(T entity, boolean withAllItsListFields) {
-		
-		if(isAutoOpenAndClose)
-			open();
-			
-		Cursor cursor = database.query(entity.getClass().getSimpleName(), null, null, null, null, null, null);
-		
-		List<T> entitiesToReturn;		
-		if(withAllItsListFields) entitiesToReturn= getDataWithAllItsReference(cursor, entity);
-		else entitiesToReturn = getDataFromCursor(cursor, entity);
-
-		if(isAutoOpenAndClose)
-			close();
-		
-		return entitiesToReturn;
+		return getAll(entity, (Set<String>) null, withAllItsListFields);
+	}
+	
+	/**
+	 * Gets all the records in a table in the database, reading only the passed properties. The other properties keep the value given to them by the constructor.
+	 * Use it to leave out large columns that are not needed.
+	 * @param entity only pass instance of a class, for example new Employee(). Do not pass the class itself. The name of its class must match the name of the table in the database.
+	 * @param fields names of the properties to read. The id is always read.
+	 * @param withAllItsListFields if true, it will fill the list properties in the entity. If false, the list properties will be null.
+	 * @return returns list of entities .
+	 * @ForExample
+	 * getAll(new Note(), new HashSet(Arrays.asList("title")), false);
+	 */
+	public <T> List<T> getAll(T entity, Set<String> fields, boolean withAllItsListFields) {
+		return findAll(entity, Query.all(), fields, withAllItsListFields);
 	}
 
 	/**
@@ -180,22 +496,40 @@ public class DatabaseContext {
 	 * @return returns list of entities.
 	 */
 	public <T> T find(T entity, boolean withAllItsListFields) {
+		return find(entity, (Set<String>) null, withAllItsListFields);
+	}
+	
+	/**
+	 * Finds a single record from a table in the database, reading only the passed properties. The other properties keep the value given to them by the constructor.
+	 * @param entity pass an entity to be found. the entity must have a property named id and is assigned. The name of its class must match the name of the table in the database.
+	 * @param fields names of the properties to read. The id is always read.
+	 * @param withAllItsListFields if true, it will fill the list properties in the entity. If false, the list properties will be null.
+	 * @return returns the found entity.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T find(T entity, Set<String> fields, boolean withAllItsListFields) {
 
-		if(isAutoOpenAndClose)
-			open();
-
-		Cursor cursor = database.query(entity.getClass().getSimpleName(), null,
-					"id=?", new String[] { String.valueOf(getIdFromObject(entity)) }, null, null, null,
-					null);
-		
-		T entityToReturn;
-		if(withAllItsListFields) entityToReturn =  getDataWithAllItsReference(cursor, entity).get(0);
-		else entityToReturn = getDataFromCursor(cursor, entity).get(0);
+		IdentityMap identities = units.get();
+		if (identities != null && fields == null) {
+			T loaded = (T) identities.get(entity.getClass(), getIdFromObject(entity));
+			if (loaded != null && (!withAllItsListFields || identities.hasRelations(loaded))) return loaded;
+		}
 		
-		if(isAutoOpenAndClose)
-			close();
+		begin("find", false);
+		try {
+			EntityMetadata metadata = EntityMetadata.of(entity.getClass());
+			String columns = fields == null ? "*" : metadata.projection(fields);
+			SqlCursor cursor = db().query("SELECT " + columns + " FROM " + metadata.tableName + " WHERE " + idName(metadata) + "=?",
+						new String[] { String.valueOf(getIdFromObject(entity)) });
 		
-		return entityToReturn;
+			T entityToReturn;
+			if(withAllItsListFields) entityToReturn =  getDataWithAllItsReference(cursor, entity).get(0);
+			else entityToReturn = getDataFromCursor(cursor, entity).get(0);
+			
+			return entityToReturn;
+		} finally {
+			end();
+		}
 	}
 
 	/**
@@ -205,24 +539,18 @@ public class DatabaseContext {
 	 */
 	public int delete(Object entity){
 		
-		if(isAutoOpenAndClose)
-			open();
-		
-		HashMap<String, Object> iCollectionObject = new HashMap<String, Object>();		
-		getObjectFields(entity, iCollectionObject).toArray(new String[] {});
-		
-		for (Entry<String, Object> entry : iCollectionObject.entrySet()) {
-			database.delete(entry.getValue().getClass().getSimpleName(), entity.getClass().getSimpleName() +"= ?",
-	                new String[] { String.valueOf(getIdFromObject(entity))});	
+		begin("delete", true);
+		try {
+			EntityMetadata metadata = EntityMetadata.of(entity.getClass());
+			Object id = getIdFromObject(entity);
+			int result = deleteRows(metadata, idName(metadata), id);	
+			forget(entity, true);
+			
+			return result;
+		} finally {
+			end();
+			invalidateResults(Collections.singletonList(entity));
 		}
-		
-		int result = database.delete(entity.getClass().getSimpleName(), "id= ?",
-                new String[] { String.valueOf(getIdFromObject(entity)) });	
-		
-		if(isAutoOpenAndClose)
-			close();
-		
-		return result;
 	}
 	
 	/**
@@ -230,27 +558,88 @@ public class DatabaseContext {
 	 * @param entity pass an entity to be deleted. the entity must have a property named id and is assigned. The name of its class must match the name of the table in the database.
 	 * @param IdPropertyName pass the primary key name. This is in case the primary key is named other than "id" or "Id"
 	 * @return returns the number of rows affected.
+	 * @deprecated mark the primary key with {@link Id} and use {@link #delete(Object)}
 	 */
+	@Deprecated
 	public int delete(Object entity, String IdPropertyName){
 		
-		if(isAutoOpenAndClose)
-			open();
-		
-		HashMap<String, Object> iCollectionObject = new HashMap<String, Object>();		
-		getObjectFields(entity, iCollectionObject).toArray(new String[] {});
-		
-		for (Entry<String, Object> entry : iCollectionObject.entrySet()) {
-			database.delete(entry.getValue().getClass().getSimpleName(), entity.getClass().getSimpleName() +"= ?",
-	                new String[] { String.valueOf(getIdFromObject(entity))});	
+		begin("delete", true);
+		try {
+			EntityMetadata metadata = EntityMetadata.of(entity.getClass());
+			Object id = getIdFromObject(entity, IdPropertyName);
+			int result = deleteRows(metadata, IdPropertyName, id);	
+			forget(entity, true);
+			
+			return result;
+		} finally {
+			end();
+			invalidateResults(Collections.singletonList(entity));
 		}
+	}
+	
+	/**
+	 * Deletes the records with the passed ids and the records in their list fields, and the ones in the list fields of those, at every level. Runs in one transaction.
+	 * @param type the class of the table, for example Employee.class. It must have a property named id.
+	 * @param ids the ids of the records to delete
+	 * @return returns the number of records deleted from the table, not counting the ones in the list fields.
+	 * @ForExample
+	 * deleteAll(Employee.class, Arrays.asList(1, 2, 3));
+	 */
+	public int deleteAll(Class<?> type, Collection<?> ids) {
+		EntityMetadata metadata = EntityMetadata.of(type);
+		if (metadata.id == null) throw new IllegalArgumentException(type.getName() + " has no id property");
 		
-		int result = database.delete(entity.getClass().getSimpleName(), IdPropertyName+"= ?",
-                new String[] { String.valueOf(getIdFromObject(entity, IdPropertyName)) });	
-		
-		if(isAutoOpenAndClose)
-			close();
-		
-		return result;
+		begin("deleteAll", true);
+		try {
+			db().beginTransaction();
+			try {
+				List<Object> all = new ArrayList<Object>(ids);
+				int result = 0;
+				for (int from = 0; from < all.size(); from += RelationLoader.MAX_VARIABLES) {
+					List<Object> chunk = all.subList(from, Math.min(all.size(), from + RelationLoader.MAX_VARIABLES));
+					Query query = Query.where(metadata.id.name).in(chunk);
+					result += new BulkDeleter(db(), null).delete(metadata, metadata.id.name, query.getSelection(), query.getSelectionArgs());
+				}
+				db().setTransactionSuccessful();
+				return result;
+			} finally {
+				db().endTransaction();
+			}
+		} finally {
+			end();
+			forgetAll(metadata);
+			results.invalidate(ResultCache.tablesOf(metadata, true));
+		}
+	}
+	
+	/**
+	 * Deletes the records matching the query and the records in their list fields, and the ones in the list fields of those, at every level. Each table is deleted from with a single statement, in one transaction.
+	 * @param type the class of the table, for example Meeting.class
+	 * @param query the records to delete. It must not have an order, limit or offset.
+	 * @return returns the number of records deleted from the table, not counting the ones in the list fields.
+	 * @ForExample
+	 * deleteWhere(Meeting.class, Query.where("Date").lt(lastYear));
+	 */
+	public int deleteWhere(Class<?> type, Query query) {
+		if (query.getOrderBy() != null || query.getLimit() != null) throw new IllegalArgumentException("deleteWhere does not support order, limit or offset");
+		EntityMetadata metadata = EntityMetadata.of(type);
+		String idName = idName(metadata);
+		
+		begin("deleteWhere", true);
+		try {
+			db().beginTransaction();
+			try {
+				int result = new BulkDeleter(db(), null).delete(metadata, idName, query.getSelection(), query.getSelectionArgs());
+				db().setTransactionSuccessful();
+				return result;
+			} finally {
+				db().endTransaction();
+			}
+		} finally {
+			end();
+			forgetAll(metadata);
+			results.invalidate(ResultCache.tablesOf(metadata, true));
+		}
 	}
 
 	/**
@@ -261,26 +650,25 @@ public class DatabaseContext {
 	 */
 	public <T> T update(T entity, boolean withAllItsListFields){
 		
-		if(isAutoOpenAndClose)
-			open();
-		
-		HashMap<String, List<Object>> externalObjects = new HashMap<String, List<Object>>();
-		ContentValues values = getContentValues(entity, externalObjects);
-		int result = database.update(entity.getClass().getSimpleName(), values, "id = ?",
-                new String[] { String.valueOf(getIdFromObject(entity)) });	
+		begin("update", true);
+		try {
+			HashMap<String, List<Object>> externalObjects = new HashMap<String, List<Object>>();
+			int result = updateRow(entity, idName(EntityMetadata.of(entity.getClass())), externalObjects);	
+			forget(entity, false);
 		
-		if(withAllItsListFields){
-			for (Entry<String, List<Object>> entry : externalObjects.entrySet()) {
-				List<Object> ext = updateAll(entry.getValue(), withAllItsListFields);
-				setObjectField(entity, entry.getKey(), ext);
+			if(withAllItsListFields){
+				for (Entry<String, List<Object>> entry : externalObjects.entrySet()) {
+					List<Object> ext = updateAll(entry.getValue(), withAllItsListFields);
+					setObjectField(entity, entry.getKey(), ext);
+				}
 			}
+			
+			if(result == 1) return entity;
+			else return setObjectField(entity, idName(EntityMetadata.of(entity.getClass())), 0);	
+		} finally {
+			end();
+			invalidateResults(Collections.singletonList(entity));
 		}
-		
-		if(isAutoOpenAndClose)
-			close();
-		
-		if(result == 1) return entity;
-		else return setObjectField(entity, "id", 0);	
 	}
 	
 	/**
@@ -289,29 +677,30 @@ public class DatabaseContext {
 	 * @param entity entity to be updated. the entity must have a property named id and is assigned. The name of its class must match the name of the table in the database.
 	 * @param withAllItsListFields if true, it will update the list properties in the entity. If false, the list properties will be not be updated.
 	 * @return returns the updated entity
+	 * @deprecated mark the primary key with {@link Id} and use {@link #update(Object, boolean)}
 	 */
+	@Deprecated
 	public <T> T update(T entity, String IdPropertyName,  boolean withAllItsListFields){
 		
-		if(isAutoOpenAndClose)
-			open();
-		
-		HashMap<String, List<Object>> externalObjects = new HashMap<String, List<Object>>();
-		ContentValues values = getContentValues(entity, externalObjects);
-		int result = database.update(entity.getClass().getSimpleName(), values, IdPropertyName+" = ?",
-                new String[] { String.valueOf(getIdFromObject(entity,IdPropertyName)) });	
+		begin("update", true);
+		try {
+			HashMap<String, List<Object>> externalObjects = new HashMap<String, List<Object>>();
+			int result = updateRow(entity, IdPropertyName, externalObjects);	
+			forget(entity, false);
 		
-		if(withAllItsListFields){
-			for (Entry<String, List<Object>> entry : externalObjects.entrySet()) {
-				List<Object> ext = updateAll(entry.getValue(), withAllItsListFields);
-				setObjectField(entity, entry.getKey(), ext);
+			if(withAllItsListFields){
+				for (Entry<String, List<Object>> entry : externalObjects.entrySet()) {
+					List<Object> ext = updateAll(entry.getValue(), withAllItsListFields);
+					setObjectField(entity, entry.getKey(), ext);
+				}
 			}
+			
+			if(result == 1) return entity;
+			else return setObjectField(entity, IdPropertyName, 0);
+		} finally {
+			end();
+			invalidateResults(Collections.singletonList(entity));
 		}
-		
-		if(isAutoOpenAndClose)
-			close();
-		
-		if(result == 1) return entity;
-		else return setObjectField(entity, IdPropertyName, 0);
 	}
 	
 	/**
@@ -320,14 +709,29 @@ public class DatabaseContext {
 	 * @param entities list of entities to be updated. All the entities must have a property named id and is assigned. The name of its class must match the name of the table in the database.
 	 * @param withAllItsInnerListFields if true, it will update the inner list properties in the entity. If false, the inner list properties will be not be updated.
 	 * @return
+	 * @deprecated mark the primary key with {@link Id} and use {@link #updateAll(List, boolean)}
 	 */
+	@Deprecated
 	@SuppressWarnings("unchecked")
 	public <T> List<T> updateAll(List<T> entities, String IdPropertyName, boolean withAllItsInnerListFields){
-		List<Object> insertedObjects = new ArrayList<Object>();		
-		for(Object obj : (List<Object>) entities){
-			insertedObjects.add(update(obj,IdPropertyName, withAllItsInnerListFields));
+		begin("updateAll", true);
+		try {
+			db().beginTransaction();
+			try {
+				List<Object> insertedObjects = new ArrayList<Object>();		
+				for(Object obj : (List<Object>) entities){
+					insertedObjects.add(update(obj,IdPropertyName, withAllItsInnerListFields));
+				}
+				db().setTransactionSuccessful();
+				return (List<T>) insertedObjects;
+			} finally {
+				db().endTransaction();
+			}
+		} finally {
+			end();
+			// the updates invalidated the results before the transaction committed, a read in between may have cached the old rows again
+			invalidateResults(entities);
 		}
-		return (List<T>) insertedObjects;
 	}
 	
 	/**
@@ -338,43 +742,191 @@ public class DatabaseContext {
 	 */
 	@SuppressWarnings("unchecked")
 	public <T> List<T> updateAll(List<T> entities, boolean withAllItsInnerListFields){
-		List<Object> insertedObjects = new ArrayList<Object>();		
-		for(Object obj : (List<Object>) entities){
-			insertedObjects.add(update(obj, withAllItsInnerListFields));
+		begin("updateAll", true);
+		try {
+			db().beginTransaction();
+			try {
+				List<Object> insertedObjects = new ArrayList<Object>();		
+				for(Object obj : (List<Object>) entities){
+					insertedObjects.add(update(obj, withAllItsInnerListFields));
+				}
+				db().setTransactionSuccessful();
+				return (List<T>) insertedObjects;
+			} finally {
+				db().endTransaction();
+			}
+		} finally {
+			end();
+			// the updates invalidated the results before the transaction committed, a read in between may have cached the old rows again
+			invalidateResults(entities);
+		}
+	}
+	
+	/**
+	* Adds an entity, or updates it if a record with its id already exists, with all the entities in its list fields. Only the non-null properties are written.
+	* An entity whose id is not assigned (null or 0) is added and gets the auto increment id.
+	* @param entity entity to be added or updated. The name of its class must match the name of the table in the database.
+	* @return returns the entity. If it fails, the exception of the database is thrown and nothing of the entity is written.
+	* @ForExample
+	* upsert(employee);
+	*/
+	public <T> T upsert(T entity) {
+		upsertAll(Collections.singletonList(entity), null);
+		return entity;
+	}
+	
+	/**
+	* Adds an entity, or updates it if a record with its id already exists, with all the entities in its list fields. Only the non-null properties are written.
+	* @param entity entity to be added or updated. The name of its class must match the name of the table in the database.
+	* @param IdPropertyName pass the primary key name. This is in case the primary key is named other than "id" or "Id"
+	* @return returns the entity. If it fails, the exception of the database is thrown and nothing of the entity is written.
+	* @deprecated mark the primary key with {@link Id} and use {@link #upsert(Object)}
+	*/
+	@Deprecated
+	public <T> T upsert(T entity, String IdPropertyName) {
+		upsertAll(Collections.singletonList(entity), IdPropertyName);
+		return entity;
+	}
+	
+	/**
+	* Adds or updates a list of entities in one transaction, with all the entities in their list fields. Use it to save what was received from a server without finding every record first.
+	* @param entities entities to be added or updated. The name of their class must match the name of the table in the database.
+	* @return returns the entities. If one fails, its chunk is rolled back, the ids assigned in it are set back and the exception of the database is thrown.
+	* @ForExample
+	* upsertAll(employeesFromServer);
+	*/
+	public <T> List<T> upsertAll(List<T> entities) {
+		return upsertAll(entities, null);
+	}
+	
+	/**
+	* Adds or updates a list of entities in one transaction, with all the entities in their list fields.
+	* @param entities entities to be added or updated. The name of their class must match the name of the table in the database.
+	* @param IdPropertyName pass the primary key name. This is in case the primary key is named other than "id" or "Id"
+	* @return returns the entities. If one fails, its chunk is rolled back, the ids assigned in it are set back and the exception of the database is thrown.
+	* @deprecated mark the primary key with {@link Id} and use {@link #upsertAll(List)}
+	*/
+	@Deprecated
+	public <T> List<T> upsertAll(List<T> entities, String IdPropertyName) {
+		
+		begin("upsertAll", true);
+		try {
+			// one transaction for the whole list, the inserter only commits in chunks when it owns the transaction
+			db().beginTransaction();
+			try {
+				new BulkInserter(db(), statements, bulkChunkSize).upsertAll(entities, IdPropertyName);
+				db().setTransactionSuccessful();
+				written(entities);
+				
+				return entities;
+			} finally {
+				db().endTransaction();
+			}
+		} finally {
+			end();
+			invalidateResults(entities);
 		}
-		return (List<T>) insertedObjects;
 	}
 
 	/**
-	 * Finds all records in a table matching the ContenetValues passed
+	 * Finds all records in a table where every column in the map equals its value
 	 * @param entity only pass instance of a class, for example new Employee(). Do not pass the class itself. The name of its class must match the name of the table in the database.
-	 * @param contentValues the where clause. ContentValues to search based on. 
+	 * @param values the where clause. The columns (properties) and the values to search based on. 
 	 * @param withAllItsListFields if true, it will fill the list properties in the entity. If false, the list properties will be null.
 	 * @return returns list of matching entities
-	 * @ForExample findAll(new Employee(), contentValues, true);
+	 * @ForExample findAll(new Employee(), values, true);
 	 * 
 	 */
 	
-	public <T> List<T> findAll(T entity, ContentValues contentValues, boolean withAllItsListFields){
-		
-		if(isAutoOpenAndClose)
-			open();
-		
-		String tableName = entity.getClass().getSimpleName();
-		String where = getContentValuesAsStringSeperatedBy("AND", contentValues);
-		String sql = "SELECT * FROM "+tableName+" WHERE "+where;
-		Cursor cursor = database.rawQuery(sql, null);
-		
-		List<T> entitiesToReturn;
-		if(withAllItsListFields) entitiesToReturn = getDataWithAllItsReference(cursor, entity);
-		else entitiesToReturn = getDataFromCursor(cursor, entity);
+	public <T> List<T> findAll(T entity, Map<String, ?> values, boolean withAllItsListFields){
+		return findAll(entity, Query.matching(values), withAllItsListFields);
+	}
+	
+	/**
+	 * Finds all records in a table matching the query passed. The values of the query are bound as parameters.
+	 * @param entity only pass instance of a class, for example new Employee(). Do not pass the class itself. The name of its class must match the name of the table in the database.
+	 * @param query the where clause, order and limit. 
+	 * @param withAllItsListFields if true, it will fill the list properties in the entity. If false, the list properties will be null.
+	 * @return returns list of matching entities
+	 * @ForExample findAll(new Employee(), Query.where("Department").eq(3).orderBy("Name", true), true);
+	 * 
+	 */
+	public <T> List<T> findAll(T entity, Query query, boolean withAllItsListFields){
+		return findAll(entity, query, (Set<String>) null, withAllItsListFields);
+	}
+	
+	/**
+	 * Finds all records in a table matching the query passed, reading only the passed properties. The other properties keep the value given to them by the constructor.
+	 * @param entity only pass instance of a class, for example new Employee(). Do not pass the class itself. The name of its class must match the name of the table in the database.
+	 * @param query the where clause, order and limit. 
+	 * @param fields names of the properties to read. The id is always read.
+	 * @param withAllItsListFields if true, it will fill the list properties in the entity. If false, the list properties will be null.
+	 * @return returns list of matching entities
+	 */
+	public <T> List<T> findAll(T entity, Query query, Set<String> fields, boolean withAllItsListFields){
+		
+		EntityMetadata metadata = EntityMetadata.of(entity.getClass());
+		String sql = query.toSql(metadata.tableName, metadata.projection(fields));
+		String[] args = query.getSelectionArgs();
+		
+		// results are not shared inside a unit of work, it hands out its own instances
+		String key = null;
+		long version = 0;
+		if (units.get() == null && results.isEnabled(metadata.tableName)) {
+			key = resultKey(sql, args, withAllItsListFields);
+			List<T> cached = results.get(key);
+			if (cached != null) return cached;
+			version = results.version();
+		}
 		
-		if(isAutoOpenAndClose)
-			close();
+		begin("findAll", false);
+		try {
+			SqlCursor cursor = db().query(sql, args);
 		
-		return entitiesToReturn;
+			List<T> entitiesToReturn;
+			if(withAllItsListFields) entitiesToReturn = getDataWithAllItsReference(cursor, entity);
+			else entitiesToReturn = getDataFromCursor(cursor, entity);
+			
+			if (key != null) results.put(key, metadata.tableName, ResultCache.tablesOf(metadata, withAllItsListFields), entitiesToReturn, version);
+			return entitiesToReturn;
+		} finally {
+			end();
+		}
 	}
 
+	/**
+	 * Gets all the records in the table of entity, read into instances of a smaller projection class. Only the columns of the projection class properties are read.
+	 * @param entity only pass instance of a class, for example new Note(). The name of its class must match the name of the table in the database.
+	 * @param projection class whose properties are a subset of the table columns, for example NoteTitle.class
+	 * @return returns list of projections.
+	 * @ForExample
+	 * getAll(new Note(), NoteTitle.class);
+	 */
+	public <P> List<P> getAll(Object entity, Class<P> projection) {
+		return findAll(entity, Query.all(), projection);
+	}
+	
+	/**
+	 * Finds all records in the table of entity matching the query passed, read into instances of a smaller projection class. Only the columns of the projection class properties are read.
+	 * @param entity only pass instance of a class, for example new Note(). The name of its class must match the name of the table in the database.
+	 * @param query the where clause, order and limit. 
+	 * @param projection class whose properties are a subset of the table columns, for example NoteTitle.class
+	 * @return returns list of matching projections.
+	 */
+	public <P> List<P> findAll(Object entity, Query query, Class<P> projection) {
+		
+		begin("findAll", false);
+		try {
+			String columns = EntityMetadata.of(projection).columnList();
+			SqlCursor cursor = db().query(query.toSql(EntityMetadata.of(entity.getClass()).tableName, columns), query.getSelectionArgs());
+			List<P> entitiesToReturn = getDataFromCursor(cursor, projection);
+			
+			return entitiesToReturn;
+		} finally {
+			end();
+		}
+	}
+	
 	/**
 	 * Finds all matched records from a many to many relationship table
 	 * @param entityToReturn only pass instance of a class, for example new Employee(). Do not pass the class itself. The name of its class must match the name of the table in the database.
@@ -404,29 +956,134 @@ public class DatabaseContext {
 	 */
 	public <T> List<T> subQuery(T entityToReturn, Object fromEntity, Object whereEntity,  boolean withAllItsListFields){
 		
-		if(isAutoOpenAndClose)
-			open();
+		begin("subQuery", false);
+		try {
+			SqlCursor cursor = subQueryCursor(db(), entityToReturn, fromEntity, whereEntity);
+	
+			List<T> entitiesToReturn;
+			if(withAllItsListFields) entitiesToReturn = getDataWithAllItsReference(cursor, entityToReturn);
+			else entitiesToReturn = getDataFromCursor(cursor, entityToReturn);
+			
+			return entitiesToReturn;
+		} finally {
+			end();
+		}
+	}
+	
+	/**
+	 * Gets one page of the records in a table, ordered by id. Only the rows of the page are read, by seeking to the id after the last one of the previous page, so every page is as fast as the first one.
+	 * @param entity only pass instance of a class, for example new Employee(). Do not pass the class itself. The name of its class must match the name of the table in the database. It must have a property named id.
+	 * @param afterId the id of the last record of the previous page (page.getNext()), or null for the first page.
+	 * @param pageSize maximum number of records in the page.
+	 * @param withAllItsListFields if true, it will fill the list properties in the entities. If false, the list properties will be null.
+	 * @return returns the page of entities and the token of the next page.
+	 * @ForExample <pre>
+	 * <code>
+	 * Page[Employee] page = page(new Employee(), null, 50, false);
+	 * while (page.hasNext()) {
+	 *	page = page(new Employee(), page.getNext(), 50, false);
+	 * }
+	 * </code>
+	 * </pre>
+	 */
+	public <T> Page<T> page(T entity, Object afterId, int pageSize, boolean withAllItsListFields) {
 		
-		Object equalval = getIdFromObject(whereEntity);
-		String whereKey = whereEntity.getClass().getSimpleName();
+		EntityMetadata metadata = EntityMetadata.of(entity.getClass());
+		if (metadata.id == null) throw new IllegalArgumentException(metadata.tableName + " must have a property named id");
 		
-		String tableToReturnName = entityToReturn.getClass().getSimpleName();
-		String fromObjName = fromEntity.getClass().getSimpleName();
+		String idName = metadata.id.name;
+		Query query = afterId == null ? Query.all() : Query.where(idName).gt(afterId);
+		query.orderBy(idName, true).limit(pageSize + 1);
 		
-		String sql = "select * from " + tableToReturnName +" where " + tableToReturnName 
-				+ ".Id in (select " + fromObjName + "." + tableToReturnName + " from " + fromObjName 
-				+ " where " + fromObjName + "." + whereKey + "='" + String.valueOf(equalval) + "')";
-
-		Cursor cursor = database.rawQuery(sql, null);
+		List<T> items = findPage(entity, query, pageSize, withAllItsListFields);
+		Object next = items.size() > pageSize ? getIdFromObject(items.get(pageSize - 1)) : null;
+		return new Page<T>(trim(items, pageSize), next);
+	}
 	
-		List<T> entitiesToReturn;
-		if(withAllItsListFields) entitiesToReturn = getDataWithAllItsReference(cursor, entityToReturn);
-		else entitiesToReturn = getDataFromCursor(cursor, entityToReturn);
+	/**
+	 * Gets one page of the records in a table, ordered by id, skipping the records of the previous pages.
+	 * Prefer {@link #page(Object, Object, int, boolean)}, the further the offset the slower this is because SQLite still has to step over the skipped rows.
+	 * @param entity only pass instance of a class, for example new Employee(). Do not pass the class itself. The name of its class must match the name of the table in the database. It must have a property named id.
+	 * @param offset number of records to skip (page.getNext()), 0 for the first page.
+	 * @param pageSize maximum number of records in the page.
+	 * @param withAllItsListFields if true, it will fill the list properties in the entities. If false, the list properties will be null.
+	 * @return returns the page of entities and the offset of the next page.
+	 */
+	public <T> Page<T> pageByOffset(T entity, int offset, int pageSize, boolean withAllItsListFields) {
+		
+		EntityMetadata metadata = EntityMetadata.of(entity.getClass());
+		if (metadata.id == null) throw new IllegalArgumentException(metadata.tableName + " must have a property named id");
 		
-		if(isAutoOpenAndClose)
-			close();
+		Query query = Query.all().orderBy(metadata.id.name, true).limit(pageSize + 1).offset(offset);
 		
-		return entitiesToReturn;
+		List<T> items = findPage(entity, query, pageSize, withAllItsListFields);
+		Object next = items.size() > pageSize ? Integer.valueOf(offset + pageSize) : null;
+		return new Page<T>(trim(items, pageSize), next);
+	}
+	
+	/**
+	 * Gets all the records in a table in the database one at a time. The rows are read while iterating, so the whole table is never held in memory.
+	 * The list properties of the entities are not filled. The iterator must be closed if it is not read to the end.
+	 * @param entity only pass instance of a class, for example new Employee(). Do not pass the class itself. The name of its class must match the name of the table in the database.
+	 * @param reuseInstance if true, the same instance is filled and returned for every record, which avoids creating an object per record. Do not keep references to the returned entities in that case.
+	 * @return returns an iterator over the entities.
+	 * @ForExample
+	 * iterate(new Employee(), false);
+	 */
+	public <T> CloseableIterator<T> iterate(T entity, boolean reuseInstance) {
+		return iterate(entity, Query.all(), reuseInstance);
+	}
+	
+	/**
+	 * Finds all records in a table matching the query passed and returns them one at a time. The rows are read while iterating.
+	 * The list properties of the entities are not filled. The iterator must be closed if it is not read to the end.
+	 * @param entity only pass instance of a class, for example new Employee(). Do not pass the class itself. The name of its class must match the name of the table in the database.
+	 * @param query the where clause, order and limit. 
+	 * @param reuseInstance if true, the same instance is filled and returned for every record. Do not keep references to the returned entities in that case.
+	 * @return returns an iterator over the matching entities.
+	 */
+	public <T> CloseableIterator<T> iterate(T entity, Query query, boolean reuseInstance) {
+		
+		Session session = openSession(false);
+		try {
+			SqlCursor cursor = session.database.query(query.toSql(EntityMetadata.of(entity.getClass()).tableName, null), query.getSelectionArgs());
+			return iterator(session, cursor, entity, reuseInstance);
+		} catch (RuntimeException e) {
+			closeSession(session);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Same as {@link #subQuery(Object, Object, Object, boolean)} but returns the matched records one at a time, without filling their list properties.
+	 * The iterator must be closed if it is not read to the end.
+	 * @param reuseInstance if true, the same instance is filled and returned for every record. Do not keep references to the returned entities in that case.
+	 */
+	public <T> CloseableIterator<T> iterateSubQuery(T entityToReturn, Object fromEntity, Object whereEntity, boolean reuseInstance) {
+		
+		Session session = openSession(false);
+		try {
+			return iterator(session, subQueryCursor(session.database, entityToReturn, fromEntity, whereEntity), entityToReturn, reuseInstance);
+		} catch (RuntimeException e) {
+			closeSession(session);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Same as {@link #rawQuery(Object, String)} but returns the records one at a time, reading them while iterating.
+	 * The iterator must be closed if it is not read to the end.
+	 * @param reuseInstance if true, the same instance is filled and returned for every record. Do not keep references to the returned entities in that case.
+	 */
+	public <T> CloseableIterator<T> iterateRawQuery(T entityToReturn, String SQLQuery, boolean reuseInstance) {
+		
+		Session session = openSession(false);
+		try {
+			return iterator(session, session.database.query(SQLQuery, null), entityToReturn, reuseInstance);
+		} catch (RuntimeException e) {
+			closeSession(session);
+			throw e;
+		}
 	}
 	
 	/**
@@ -443,265 +1100,378 @@ public class DatabaseContext {
 	 */
 	public <T> List<T> rawQuery(T entityToReturn, String SQLQuery){
 		
-		if(isAutoOpenAndClose)
-			open();
-		
-		List<T> entitiesToReturn;
-		Cursor cursor = database.rawQuery(SQLQuery, null);
-		entitiesToReturn = getDataFromCursor(cursor, entityToReturn);
-		
-		if(isAutoOpenAndClose)
-			close();
-		
-		return entitiesToReturn;
+		begin("rawQuery", false);
+		try {
+			List<T> entitiesToReturn;
+			SqlCursor cursor = db().query(SQLQuery, null);
+			entitiesToReturn = getDataFromCursor(cursor, entityToReturn);
+			
+			return entitiesToReturn;
+		} finally {
+			end();
+		}
 	}
 	
 	
 	
-	private <T> T add(T obj, String key, Object val) {
-		HashMap<String, List<Object>> externalObjects = new HashMap<String, List<Object>>();
-		ContentValues cv = getContentValues(obj, externalObjects);
-		cv.put(key, String.valueOf(val));
-		
-		long insertid = database.insert(obj.getClass().getSimpleName(), null, cv);
+	/**
+	 * Updates all the non-null columns, except the default id, of the row with the id of the entity.
+	 * If the entity was read in the unit of work of the current thread, only the columns changed since it was read are updated, and nothing at all if none changed.
+	 * Lists found in the entity are put in externalObjects.
+	 */
+	@SuppressWarnings("unchecked")
+	private int updateRow(Object entity, String IdPropertyName, HashMap<String, List<Object>> externalObjects) {
+		EntityMetadata metadata = EntityMetadata.of(entity.getClass());
+		for (EntityMetadata.Relation relation : metadata.relations) {
+			Object value = relation.get(entity);
+			if(value instanceof List<?>){
+				externalObjects.put(relation.name, (List<Object>) value);
+			}
+		}
 		
-		setObjectField(obj,"id", insertid);
-		setObjectField(obj,key, val);
-		for (Entry<String, List<Object>> entry : externalObjects.entrySet()) {
-			List<?extends Object> ext = addAll(entry.getValue(), obj.getClass().getSimpleName(),insertid);
-			setObjectField(obj, entry.getKey(), ext);
+		IdentityMap identities = units.get();
+		Object[] snapshot = identities == null ? null : identities.snapshot(entity);
+		EntityMetadata.Column[] columns = metadata.columns;
+		Object[] values = new Object[columns.length];
+		boolean[] changed = new boolean[columns.length];
+		StringBuilder shape = new StringBuilder("update ").append(metadata.tableName).append(" by ").append(IdPropertyName).append(" [");
+		int count = 0;
+		for (int i = 0; i < columns.length; i++) {
+			if (columns[i] == metadata.id) continue;
+			values[i] = columns[i].get(entity);
+			// a tracked column set to null is written as null, untracked null columns are left as they are
+			changed[i] = snapshot == null ? values[i] != null : !IdentityMap.same(columns[i], snapshot[i], values[i]);
+			if (changed[i]) {
+				shape.append(i).append(',');
+				count++;
+			}
+		}
+		shape.append(']');
+		if (count == 0 && snapshot != null) return 1;
+		if (count == 0) throw new IllegalArgumentException("Empty values");
+
+		String key = shape.toString();
+		SqlStatement statement = statements.get(db(), key);
+		if (statement == null) {
+			StringBuilder sql = new StringBuilder("UPDATE ").append(metadata.tableName).append(" SET ");
+			for (int i = 0, set = 0; i < columns.length; i++) {
+				if (!changed[i]) continue;
+				if (set++ > 0) sql.append(',');
+				sql.append(columns[i].name).append("=?");
+			}
+			sql.append(" WHERE ").append(IdPropertyName).append(" = ?");
+			statement = statements.compile(db(), key, sql.toString());
+		}
+		try {
+			int index = 1;
+			for (int i = 0; i < values.length; i++) {
+				if (changed[i]) StatementCache.bind(statement, index++, values[i]);
+			}
+			StatementCache.bind(statement, index, getIdFromObject(entity, IdPropertyName));
+			int result = statement.executeUpdateDelete();
+			if (snapshot != null && result > 0) identities.takeSnapshot(metadata, entity);
+			return result;
+		} finally {
+			statements.release(key, statement);
 		}
-		return obj;
 	}
 	
-	@SuppressWarnings("unchecked")
-	private <T> List<T> addAll(List<T> listOfTableObjects, String key, Object val){
-		List<Object> insertedObjects = new ArrayList<Object>();
-		
-		for(Object obj : (List<Object>) listOfTableObjects){
-			insertedObjects.add(add(obj,key, val));
-		}	
-		return (List<T>) insertedObjects;
+	/**
+	 * Deletes the row where the column equals the value, and the rows in its list fields at every level, in one transaction.
+	 */
+	private int deleteRows(EntityMetadata metadata, String column, Object value) {
+		if (value == null) return 0;
+		db().beginTransaction();
+		try {
+			// the same statements every time, so they are cached
+			int result = new BulkDeleter(db(), statements).delete(metadata, column, column + " = ?", new String[] { String.valueOf(value) });
+			db().setTransactionSuccessful();
+			return result;
+		} finally {
+			db().endTransaction();
+		}
 	}
 	
-	@SuppressWarnings("deprecation")
-	private Object getFieldValue(String colloumnName, Cursor cursor) {
-		Object obj = null;
-		int index = cursor.getColumnIndex(colloumnName);
-		if(index==-1) return null;
-
-		AbstractWindowedCursor abstractWindowedCursor = (AbstractWindowedCursor)cursor;
-		CursorWindow cursorWindow = abstractWindowedCursor.getWindow();
-		int pos = abstractWindowedCursor.getPosition();
-		if (cursor.isNull(index)) {
-			obj = null;
-		} else if (cursorWindow.isLong(pos,index)) {
-			obj = cursor.getInt(index);
-		} else if (cursorWindow.isFloat(pos, index)) {
-			obj = cursor.getFloat(index);
-		} else if (cursorWindow.isString(pos, index)) {
-			obj = cursor.getString(index);
-		}
-		
-		
-	 		
-//This method is not supported in api level < 11
-//		
-//int type = cursor.getType(index);
-//		switch (type) {
-//		case Cursor.FIELD_TYPE_FLOAT:
-//			obj = cursor.getFloat(index);
-//			break;
-//		case Cursor.FIELD_TYPE_INTEGER:
-//			obj = cursor.getInt(index);
-//			break;
-//		case Cursor.FIELD_TYPE_NULL:
-//			obj = null;
-//			break;
-//		case Cursor.FIELD_TYPE_STRING:
-//			obj = cursor.getString(index);
-//			break;
-//		}
-		return obj;
-	}
-
-	private List<String> getObjectFields(Object obj) {
-		List<String> allFields = new ArrayList<String>();
-
-		Field[] fields = obj.getClass().getDeclaredFields();
-
-		for (Field field : fields) {
-			allFields.add(field.getName());
+	/**
+	 * Starts an operation on the current thread. Must be followed by end().
+	 * @param operation name of the public method, reported to the listener
+	 * @param write true for operations that write. Writes are serialized, one at a time on the writer connection. With WAL enabled reads use a reader connection from the pool.
+	 */
+	private void begin(String operation, boolean write) {
+		// measured from before waiting for the connection, null when there is no listener or inside another operation
+		OperationStats stats = backend.begin(operation);
+		Session session;
+		try {
+			session = openSession(write);
+		} catch (RuntimeException e) {
+			if (stats != null) backend.end(stats);
+			throw e;
 		}
-		return allFields;
+		session.stats = stats;
+		sessions.set(session);
 	}
-
-	@SuppressWarnings({ "unchecked", "rawtypes" })
-	private List<String> getObjectFields(Object obj, HashMap<String, Object> iCollectionTypeAttribute) {
-		List<String> allFields = new ArrayList<String>();
-
-		Field[] fields = obj.getClass().getDeclaredFields();
-
-		for (Field field : fields) {
-			if (Collection.class.isAssignableFrom(field.getType())){
-				try {
-					Class c =(Class) ((ParameterizedType)field.getGenericType()).getActualTypeArguments()[0];
-					Object iCollectionObject = c.getConstructor().newInstance();
-					iCollectionTypeAttribute.put(field.getName(), iCollectionObject);
-				} catch (Exception e){}		
-			}else 			
-				allFields.add(field.getName());
+	
+	private void end() {
+		Session session = sessions.get();
+		sessions.set(session.parent);
+		closeSession(session);
+		if (session.stats != null) backend.end(session.stats);
+	}
+	
+	/**
+	 * @return returns the connection of the operation running on the current thread.
+	 */
+	private SqlConnection db() {
+		Session session = sessions.get();
+		return session == null ? database : session.database;
+	}
+	
+	private Session openSession(boolean write) {
+		Session current = sessions.get();
+		// an operation inside another one on the same thread uses its connection, unless it needs to write and that one only reads
+		if (current != null && (current.write || !write)) return new Session(current, current.database, current.write, Session.NESTED);
+		
+		ReaderPool pool = readers;
+		if (!write && pool != null) {
+			Session session = new Session(current, pool.acquire(), false, Session.READER);
+			session.pool = pool;
+			return session;
+		}
+		
+		if (write) writeLock.lock();
+		try {
+			if (isAutoOpenAndClose || pool != null) return new Session(current, connections.acquire(), write, Session.SHARED);
+			return new Session(current, database, write, Session.OPENED_BY_USER);
+		} catch (RuntimeException e) {
+			if (write) writeLock.unlock();
+			throw e;
 		}
-		return allFields;
 	}
 	
-	@SuppressWarnings("unchecked")
-	private ContentValues getContentValues(Object obj, HashMap<String, List<Object>> externalObjects) {
-		ContentValues values = new ContentValues();
-		Field[] fields = obj.getClass().getDeclaredFields();
-		for (Field field : fields)
-			try {
-				field.setAccessible(true);
-				String key = field.getName();
-				Object value = field.get(obj);
-				
-				if (!key.equalsIgnoreCase("id") && value!=null && !(value instanceof List<?>)) {								
-					values.put(key, String.valueOf(value));
-				}else if(value instanceof List<?>){
-					externalObjects.put(key, (List<Object>) value);
-				}
-			} catch (IllegalAccessException e) {}
-		return values;
+	private void closeSession(Session session) {
+		switch (session.kind) {
+		case Session.NESTED:
+			return;
+		case Session.READER:
+			session.pool.release(session.database);
+			return;
+		case Session.SHARED:
+			connections.release();
+			break;
+		}
+		if (session.write) writeLock.unlock();
 	}
 	
-	@SuppressWarnings("unchecked")
-	private ContentValues getContentValues(Object obj,String IdProperty, boolean isAutoIncrement,  HashMap<String, List<Object>> externalObjects) {
-		ContentValues values = new ContentValues();
-		Field[] fields = obj.getClass().getDeclaredFields();
-		for (Field field : fields)
-			try {
-				field.setAccessible(true);
-				String key = field.getName();
-				Object value = field.get(obj);
-				
-				if(isAutoIncrement){
-					if (!key.equalsIgnoreCase(IdProperty) && value!=null && !(value instanceof List<?>)) {								
-						values.put(key, String.valueOf(value));
-					}else if(value instanceof List<?>){
-						externalObjects.put(key, (List<Object>) value);
-					}
-				}else{
-					if (value!=null && !(value instanceof List<?>)) {								
-						values.put(key, String.valueOf(value));
-					}else if(value instanceof List<?>){
-						externalObjects.put(key, (List<Object>) value);
-					}
-				}
-			} catch (IllegalAccessException e) {}
-		return values;
+	/**
+	 * The connection used by one operation.
+	 */
+	private static final class Session {
+		/** uses the connection of the operation it runs inside */
+		static final int NESTED = 0;
+		/** uses a read-only connection of the reader pool */
+		static final int READER = 1;
+		/** uses the shared connection of the ConnectionManager */
+		static final int SHARED = 2;
+		/** uses the connection opened by open() */
+		static final int OPENED_BY_USER = 3;
+		
+		final Session parent;
+		final SqlConnection database;
+		final boolean write;
+		final int kind;
+		ReaderPool pool;
+		/** the measurements of the operation, only on the session that started it */
+		OperationStats stats;
+		
+		Session(Session parent, SqlConnection database, boolean write, int kind) {
+			this.parent = parent;
+			this.database = database;
+			this.write = write;
+			this.kind = kind;
+		}
 	}
-
+	
 	private Object getIdFromObject(Object obj){
+		EntityMetadata.Column id = EntityMetadata.of(obj.getClass()).id;
+		return id == null ? null : id.get(obj);
+	}
 	
-		Field[] fields = obj.getClass().getDeclaredFields();
-		for (Field field : fields)
-			try {
-				field.setAccessible(true);
-				String key = field.getName();
-				Object value = field.get(obj);	
-				if (key.equalsIgnoreCase("id")) {								
-					return value;
-				}
-			} catch (IllegalAccessException e) {}
-		return null;
+	/**
+	 * Returns the name of the primary key column, the one marked with {@link Id} or else "id".
+	 */
+	private static String idName(EntityMetadata metadata) {
+		return metadata.id == null ? EntityMetadata.DEFAULT_ID : metadata.id.name;
 	}
 	
 	private Object getIdFromObject(Object obj, String IdPropertyName ){
-		
-		Field[] fields = obj.getClass().getDeclaredFields();
-		for (Field field : fields)
-			try {
-				field.setAccessible(true);
-				String key = field.getName();
-				Object value = field.get(obj);	
-				if (key.equalsIgnoreCase(IdPropertyName)) {								
-					return value;
-				}
-			} catch (IllegalAccessException e) {}
-		return null;
+		return EntityMetadata.of(obj.getClass()).get(obj, IdPropertyName);
 	}
 	
 
 	private <T> T setObjectField(T obj, String Key, Object val){
-		Field[] fields  = obj.getClass().getDeclaredFields();
+		EntityMetadata.of(obj.getClass()).set(obj, Key, val);
+		return obj;
+	}
 
-		for (Field field : fields) {
-			field.setAccessible(true);
-			String keey = field.getName();
-			if(keey.equalsIgnoreCase(Key)){
-				try {
-					field.set(obj, val);
-				} catch (Exception e){}
-			}
+	/**
+	 * Runs a query that asks for one more row than the page size, to know if there is a next page, and loads the list fields of the page only.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> List<T> findPage(T entity, Query query, int pageSize, boolean withAllItsListFields) {
+		if (pageSize < 1) throw new IllegalArgumentException("pageSize must be at least 1");
+		
+		begin("page", false);
+		try {
+			Class<T> type = (Class<T>) entity.getClass();
+			SqlCursor cursor = db().query(query.toSql(EntityMetadata.of(type).tableName, null), query.getSelectionArgs());
+			IdentityMap identities = withAllItsListFields ? graphIdentities() : units.get();
+			List<T> items = new CursorMapper<T>(type, cursor, identities).mapAll(cursor);
+			if(withAllItsListFields) loadRelations(identities, trim(items, pageSize), EntityMetadata.of(type));
+			
+			return items;
+		} finally {
+			end();
 		}
-		return obj;
 	}
+	
+	private static <T> List<T> trim(List<T> items, int size) {
+		return items.size() > size ? items.subList(0, size) : items;
+	}
+	
+	private SqlCursor subQueryCursor(SqlConnection database, Object entityToReturn, Object fromEntity, Object whereEntity) {
+		Object equalval = getIdFromObject(whereEntity);
+		String whereKey = EntityMetadata.of(whereEntity.getClass()).tableName;
+		
+		EntityMetadata toReturn = EntityMetadata.of(entityToReturn.getClass());
+		String tableToReturnName = toReturn.tableName;
+		String fromObjName = EntityMetadata.of(fromEntity.getClass()).tableName;
+		
+		String sql = "select * from " + tableToReturnName +" where " + tableToReturnName 
+				+ "." + idName(toReturn) + " in (select " + fromObjName + "." + tableToReturnName + " from " + fromObjName 
+				+ " where " + fromObjName + "." + whereKey + "= ?)";
 
+		return database.query(sql, new String[] { String.valueOf(equalval) });
+	}
+	
 	@SuppressWarnings("unchecked")
-	private <T> List<T> getDataFromCursor(Cursor cursor, T ofTypeObject){
-		
-		List<Object> jArray = new ArrayList<Object>();
-		String[] allColloumns = getObjectFields(ofTypeObject).toArray(new String[] {});
-		if (cursor.getCount() > 0) {
-			while (cursor.moveToNext()) {
-				JSONObject jObject = new JSONObject();
-				for (String col : allColloumns) {
-					try {
-						jObject.put(col, getFieldValue(col, cursor));
-					} catch (JSONException e) {
-					}
-				}
-				jArray.add(new Gson().fromJson(jObject.toString(), ofTypeObject.getClass()));
+	private <T> CloseableIterator<T> iterator(final Session session, SqlCursor cursor, T ofTypeObject, boolean reuseInstance) {
+		return new CursorIterator<T>((Class<T>) ofTypeObject.getClass(), cursor, reuseInstance) {
+			@Override
+			protected void onClose() {
+				closeSession(session);
 			}
-		}
-		cursor.close();
-		return (List<T>) jArray;
+		};
+	}
+	
+	@SuppressWarnings("unchecked")
+	private <T> List<T> getDataFromCursor(SqlCursor cursor, T ofTypeObject){
+		return getDataFromCursor(cursor, (Class<T>) ofTypeObject.getClass());
+	}
+
+	private <T> List<T> getDataFromCursor(SqlCursor cursor, Class<T> type){
+		return new CursorMapper<T>(type, cursor, units.get()).mapAll(cursor);
 	}
 
 	@SuppressWarnings("unchecked")
-	private <T> List<T> getDataWithAllItsReference(Cursor cursor, T ofTypeObject){
-		
-		List<Object> jArray = new ArrayList<Object>();
-		HashMap<String, Object> iCollectionObject = new HashMap<String, Object>();		
-		String[] allColloumns = getObjectFields(ofTypeObject, iCollectionObject).toArray(new String[] {});
-		
-		if (cursor.getCount() > 0) {
-			while (cursor.moveToNext()) {
-				JSONObject jObject = new JSONObject();				
-				for (String col : allColloumns) {
-					try {
-						jObject.put(col, getFieldValue(col, cursor));
-					} catch (JSONException e) {}
-				}
-				Object OBJ = new Gson().fromJson(jObject.toString(), ofTypeObject.getClass());
-				for (Entry<String, Object> entry : iCollectionObject.entrySet()) {
-					try {
-						ContentValues cv = new ContentValues();
-						cv.put(ofTypeObject.getClass().getSimpleName(), jObject.getLong("id"));
-						List<Object> ext = findAll(entry.getValue(), cv, true );
-						setObjectField(OBJ, entry.getKey(), ext);
-					} catch (JSONException e) {}
-				}
-				jArray.add(OBJ);
+	private <T> List<T> getDataWithAllItsReference(SqlCursor cursor, T ofTypeObject){
+		return getDataWithAllItsReference(cursor, (Class<T>) ofTypeObject.getClass());
+	}
+
+	private <T> List<T> getDataWithAllItsReference(SqlCursor cursor, Class<T> type){
+		
+		IdentityMap identities = graphIdentities();
+		CursorMapper<T> mapper = new CursorMapper<T>(type, cursor, identities);
+		List<T> jArray = mapper.mapAll(cursor);
+		loadRelations(identities, jArray, mapper.metadata());
+		return jArray;	
+	}
+	
+	private void loadRelations(IdentityMap identities, List<?> entities, EntityMetadata metadata) {
+		OperationStats stats = backend.current();
+		long start = stats == null ? 0 : System.nanoTime();
+		new RelationLoader(db(), identities).load(entities, metadata);
+		if (stats != null) stats.relationLoadNanos += System.nanoTime() - start;
+	}
+	
+	private static String resultKey(String sql, String[] args, boolean withAllItsListFields) {
+		StringBuilder key = new StringBuilder(sql).append(withAllItsListFields ? " with lists" : "");
+		for (String arg : args) {
+			// the length keeps ["a,b"] and ["a","b"] apart
+			key.append(' ').append(arg.length()).append(':').append(arg);
+		}
+		return key.toString();
+	}
+	
+	/**
+	 * Drops the cached results of the tables of the passed entities and of their list fields.
+	 */
+	private void invalidateResults(List<?> entities) {
+		Set<Class<?>> types = new HashSet<Class<?>>();
+		for (Object entity : entities) {
+			if (entity == null || !types.add(entity.getClass())) continue;
+			results.invalidate(ResultCache.tablesOf(EntityMetadata.of(entity.getClass()), true));
+		}
+	}
+	
+	/**
+	 * @return returns the identity map of the unit of work, or a new one for loading a single graph, so that a record reached through more than one parent is read once.
+	 */
+	private IdentityMap graphIdentities() {
+		IdentityMap identities = units.get();
+		return identities == null ? new IdentityMap() : identities;
+	}
+	
+	/**
+	 * Brings the unit of work of the current thread up to date with entities written without update, and the entities in their list fields.
+	 */
+	private void written(List<?> entities) {
+		IdentityMap identities = units.get();
+		if (identities == null) return;
+		for (Object entity : entities) {
+			if (entity == null) continue;
+			EntityMetadata metadata = EntityMetadata.of(entity.getClass());
+			if (identities.snapshot(entity) != null) identities.takeSnapshot(metadata, entity);
+			else forget(entity, false);
+			for (EntityMetadata.Relation relation : metadata.relations) {
+				Object value = relation.get(entity);
+				if (value instanceof List<?>) written((List<?>) value);
 			}
 		}
-		cursor.close();		
-		return (List<T>) jArray;	
 	}
 	
-	private String getContentValuesAsStringSeperatedBy(String speratedBy, ContentValues contentValues) {	
-		String c = contentValues.valueSet().toString();	
-		return c.replace("[", "").replace("=", "='").replaceAll(",","' "+speratedBy).replace("]", "'");
+	/**
+	 * Removes an updated or deleted entity from the unit of work of the current thread, unless it is the instance the unit of work holds and it was updated.
+	 */
+	private void forget(Object entity, boolean deleted) {
+		IdentityMap identities = units.get();
+		if (identities == null) return;
+		EntityMetadata metadata = EntityMetadata.of(entity.getClass());
+		Object id = getIdFromObject(entity);
+		if (deleted || identities.get(metadata.type, id) != entity) identities.remove(metadata.type, id);
+		if (!deleted) return;
+		// the children were deleted with it
+		for (EntityMetadata.Relation relation : metadata.relations) {
+			if (relation.elementType != null) forgetAll(relation.element());
+		}
+	}
+	
+	/**
+	 * Removes all the entities of the class, and of the classes in its list fields, from the unit of work of the current thread.
+	 */
+	private void forgetAll(EntityMetadata metadata) {
+		IdentityMap identities = units.get();
+		if (identities == null) return;
+		Set<EntityMetadata> forgotten = new HashSet<EntityMetadata>();
+		List<EntityMetadata> pending = new ArrayList<EntityMetadata>();
+		pending.add(metadata);
+		while (!pending.isEmpty()) {
+			EntityMetadata next = pending.remove(pending.size() - 1);
+			if (!forgotten.add(next)) continue;
+			identities.remove(next.type);
+			for (EntityMetadata.Relation relation : next.relations) {
+				if (relation.elementType != null) pending.add(relation.element());
+			}
+		}
 	}
 	
 
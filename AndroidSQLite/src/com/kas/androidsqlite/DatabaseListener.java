@@ -0,0 +1,36 @@
+package com.kas.androidsqlite;
+
+import java.util.List;
+
+/**
+ * Receives the measurements of a {@link DatabaseContext}, set with {@link DatabaseContext#setListener(DatabaseListener)}.
+ * The methods are called on the thread that ran the operation, so they should return quickly, for example by
+ * logging or adding to counters.
+ * @ForExample <pre>
+ * <code>
+ * databaseContext.setListener(new DatabaseListener() {
+ *	public void onOperation(OperationStats stats) {
+ *		Log.d("db", stats.toString());
+ *	}
+ *	public void onSlowQuery(String sql, long durationNanos, List[String] queryPlan) {
+ *		Log.w("db", sql + " took " + durationNanos / 1000000 + " ms: " + queryPlan);
+ *	}
+ * });
+ * </code>
+ * </pre>
+ */
+public interface DatabaseListener {
+
+	/**
+	 * Called when an operation of the DatabaseContext ends, successfully or not. Operations that run inside another one,
+	 * like the updates of the list fields of an update, are counted in the outer operation.
+	 */
+	void onOperation(OperationStats stats);
+
+	/**
+	 * Called when a query or statement takes longer than {@link DatabaseContext#setSlowQueryThreshold(long)}.
+	 * @param durationNanos the time SQLite spent running it, without the time spent mapping its rows
+	 * @param queryPlan the rows of <code>EXPLAIN QUERY PLAN</code> for it, for example "SCAN TABLE Meeting"
+	 */
+	void onSlowQuery(String sql, long durationNanos, List<String> queryPlan);
+}
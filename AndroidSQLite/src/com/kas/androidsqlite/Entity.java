@@ -0,0 +1,33 @@
+package com.kas.androidsqlite;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class stored in the database. It is optional for reflection, but with the entity processor on the
+ * annotation processor path a mapper is generated at build time for every class that has it, so that its rows are
+ * read and written without reflection. The fields of such a class must not be private, and it needs a no-arg
+ * constructor that is not private.
+ * @ForExample <pre>
+ * <code>
+ * &#64;Entity
+ * public class Employee {
+ *	&#64;Id int id;
+ *	String name;
+ *	&#64;Column(name = "Salary") double pay;
+ *	&#64;Relation(Meeting.class) List[Meeting] meetings;
+ * }
+ * </code>
+ * </pre>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Entity {
+
+	/**
+	 * Name of the table, the name of the class if empty.
+	 */
+	String table() default "";
+}
@@ -0,0 +1,34 @@
+package com.kas.androidsqlite;
+
+/**
+ * Reads and writes the fields of an entity without reflection. Implementations are generated at build time for
+ * classes marked with {@link Entity}, named after the class with _Mapper appended, for example Employee_Mapper; they
+ * are found and used automatically. The list fields are not part of the mapper.
+ */
+public interface EntityMapper<T> {
+
+	/**
+	 * @return returns the names of the fields the mapper reads and writes. The other methods refer to a field by its
+	 * position in this array.
+	 */
+	String[] fieldNames();
+
+	T newInstance();
+
+	/**
+	 * @return returns the value of the field, boxed.
+	 */
+	Object get(T entity, int field);
+
+	/**
+	 * Sets the field. Null is ignored for primitive fields.
+	 */
+	void set(T entity, int field, Object value);
+
+	/**
+	 * Reads the row the cursor is positioned on into the entity.
+	 * @param indexes the cursor column index of every field, -1 for fields the cursor doesn't have
+	 * @param clearNulls true to set fields whose column is null to null (0 or false for primitives), false to leave them
+	 */
+	void read(SqlCursor cursor, int[] indexes, T entity, boolean clearNulls);
+}
@@ -0,0 +1,398 @@
+package com.kas.androidsqlite;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.gson.Gson;
+
+/**
+ * Describes how an entity class maps to its table: the table name, the id field, the scalar columns and the list
+ * (relation) fields. Every class is resolved only once, after that {@link #of(Class)} returns the cached description.
+ * Static and synthetic fields are not mapped. The names can be changed with the {@link Entity}, {@link Id},
+ * {@link com.kas.androidsqlite.Column} and {@link com.kas.androidsqlite.Relation} annotations. The fields are read and
+ * written by the {@link EntityMapper} generated for the class when there is one, by reflection otherwise.
+ */
+final class EntityMetadata {
+
+	private static final ConcurrentHashMap<Class<?>, EntityMetadata> REGISTRY = new ConcurrentHashMap<Class<?>, EntityMetadata>();
+
+	/** Only used to create instances of classes that don't have a no-arg constructor. */
+	private static final Gson GSON = new Gson();
+
+	/** The default primary key name, matched ignoring case. */
+	static final String DEFAULT_ID = "id";
+
+	final Class<?> type;
+	final String tableName;
+	/** The field marked with {@link Id}, else the field named "id" (ignoring case), or null if the entity does not have one. */
+	final Column id;
+	/** true if the database assigns the id, as it does unless the {@link Id} annotation says otherwise */
+	final boolean autoIncrement;
+	/** All the scalar columns, including the id column. */
+	final Column[] columns;
+	/** All the collection fields. */
+	final Relation[] relations;
+
+	/** the generated mapper of the class, or null to use reflection */
+	private final EntityMapper<Object> mapper;
+	private final Constructor<?> constructor;
+	private final HashMap<String, Column> columnsByName;
+	private final HashMap<String, Relation> relationsByName;
+
+	/**
+	 * Returns the metadata of the passed class, resolving it the first time it is asked for.
+	 * @param type entity class. The name of the class must match the name of the table in the database, unless it is
+	 * given by {@link Entity#table()}.
+	 */
+	static EntityMetadata of(Class<?> type) {
+		EntityMetadata metadata = REGISTRY.get(type);
+		if (metadata == null) {
+			metadata = new EntityMetadata(type);
+			EntityMetadata existing = REGISTRY.putIfAbsent(type, metadata);
+			if (existing != null) metadata = existing;
+		}
+		return metadata;
+	}
+
+	private EntityMetadata(Class<?> type) {
+		this.type = type;
+		Entity entity = type.getAnnotation(Entity.class);
+		this.tableName = entity == null || entity.table().length() == 0 ? type.getSimpleName() : entity.table();
+		EntityMapper<Object> mapper = mapperOf(type);
+		String[] mapped = mapper == null ? null : mapper.fieldNames();
+
+		List<Column> columnList = new ArrayList<Column>();
+		List<Relation> relationList = new ArrayList<Relation>();
+		columnsByName = new HashMap<String, Column>();
+		relationsByName = new HashMap<String, Relation>();
+		Column marked = null;
+		boolean autoIncrement = true;
+
+		for (Field field : type.getDeclaredFields()) {
+			if (Modifier.isStatic(field.getModifiers()) || field.isSynthetic()) continue;
+			field.setAccessible(true);
+			String key = key(field.getName());
+
+			if (Collection.class.isAssignableFrom(field.getType())) {
+				Relation relation = new Relation(field, elementTypeOf(field));
+				relationList.add(relation);
+				if (!relationsByName.containsKey(key)) relationsByName.put(key, relation);
+			} else {
+				com.kas.androidsqlite.Column named = field.getAnnotation(com.kas.androidsqlite.Column.class);
+				String name = named == null || named.name().length() == 0 ? field.getName() : named.name();
+				int slot = mapped == null ? -1 : indexOf(mapped, field.getName());
+				// a mapper generated before a field was added can't be used, the fields are all read one way or the other
+				if (mapped != null && slot == -1) mapped = null;
+				Column column = new Column(field, name, slot);
+				columnList.add(column);
+				if (!columnsByName.containsKey(key)) columnsByName.put(key, column);
+				if (!columnsByName.containsKey(key(name))) columnsByName.put(key(name), column);
+				Id id = field.getAnnotation(Id.class);
+				if (id != null && marked == null) {
+					marked = column;
+					autoIncrement = id.autoIncrement();
+				}
+			}
+		}
+
+		this.columns = columnList.toArray(new Column[columnList.size()]);
+		this.relations = relationList.toArray(new Relation[relationList.size()]);
+		this.id = marked != null ? marked : columnsByName.get(DEFAULT_ID);
+		this.autoIncrement = autoIncrement;
+		this.mapper = mapped == null ? null : mapper;
+		for (Column column : columns) {
+			column.mapper = this.mapper;
+		}
+		this.constructor = noArgConstructorOf(type);
+	}
+
+	/**
+	 * Creates a new empty instance of the entity. The no-arg constructor is used when there is one so that the field
+	 * initializers run, otherwise the instance is created the way Gson does it.
+	 */
+	Object newInstance() {
+		if (mapper != null) return mapper.newInstance();
+		if (constructor == null) return GSON.fromJson("{}", type);
+		try {
+			return constructor.newInstance();
+		} catch (Exception e) {
+			throw new IllegalStateException("Cannot create an instance of " + type.getName(), e);
+		}
+	}
+
+	/**
+	 * Returns the generated mapper of the entity, or null if it has none and is mapped by reflection.
+	 */
+	EntityMapper<Object> mapper() {
+		return mapper;
+	}
+
+	/**
+	 * Finds a scalar column by the name of its field or of its column, ignoring case.
+	 * @return the column or null if there is no such column
+	 */
+	Column column(String name) {
+		return columnsByName.get(key(name));
+	}
+
+	/**
+	 * Finds a list field by its name, ignoring case.
+	 * @return the relation or null if there is no such relation
+	 */
+	Relation relation(String name) {
+		return relationsByName.get(key(name));
+	}
+
+	/**
+	 * Returns the primary key column.
+	 * @param idPropertyName the primary key name, or null for the one marked with {@link Id} or else "id"
+	 */
+	Column idColumn(String idPropertyName) {
+		if (idPropertyName == null) return id;
+		return column(idPropertyName);
+	}
+
+	/**
+	 * Returns the comma separated names of all the columns.
+	 * @throws IllegalArgumentException if the entity has no scalar field
+	 */
+	String columnList() {
+		if (columns.length == 0) throw new IllegalArgumentException("No property to select from " + tableName);
+		StringBuilder list = new StringBuilder();
+		for (Column column : columns) {
+			if (list.length() > 0) list.append(',');
+			list.append(column.name);
+		}
+		return list.toString();
+	}
+
+	/**
+	 * Returns the comma separated column names of the passed fields, always including the id column.
+	 * @param fields names of scalar fields, ignoring case, or null for all the columns
+	 * @return the columns to select, or null (all) if fields is null
+	 * @throws IllegalArgumentException if a field is not a scalar field of the entity
+	 */
+	String projection(Collection<String> fields) {
+		if (fields == null) return null;
+		StringBuilder projection = new StringBuilder();
+		if (id != null) projection.append(id.name);
+		for (String field : fields) {
+			Column column = column(field);
+			if (column == null) throw new IllegalArgumentException(tableName + " has no property named " + field);
+			if (column == id) continue;
+			if (projection.length() > 0) projection.append(',');
+			projection.append(column.name);
+		}
+		if (projection.length() == 0) throw new IllegalArgumentException("No property to select from " + tableName);
+		return projection.toString();
+	}
+
+	/**
+	 * Returns the value of the field with the passed name (column or list), ignoring case.
+	 * @return the value or null if there is no such field
+	 */
+	Object get(Object entity, String name) {
+		Column column = column(name);
+		if (column != null) return column.get(entity);
+		Relation relation = relation(name);
+		if (relation != null) return relation.get(entity);
+		return null;
+	}
+
+	/**
+	 * Sets the field with the passed name (column or list), ignoring case. Numbers are converted to the numeric type
+	 * of the field, so an insert id can be set on an int id. Values that can't be assigned to the field are ignored.
+	 */
+	void set(Object entity, String name, Object value) {
+		Column column = column(name);
+		try {
+			if (column != null) {
+				if (value instanceof Number) value = column.type.convert((Number) value, value);
+				column.set(entity, value);
+				return;
+			}
+			Relation relation = relation(name);
+			if (relation != null) relation.field.set(entity, value);
+		} catch (Exception e) {}
+	}
+
+	private static String key(String name) {
+		return name.toLowerCase(Locale.US);
+	}
+
+	/**
+	 * Loads the mapper generated for the class: Employee_Mapper for Employee, Outer_Inner_Mapper for a nested class.
+	 */
+	@SuppressWarnings("unchecked")
+	private static EntityMapper<Object> mapperOf(Class<?> type) {
+		if (type.getAnnotation(Entity.class) == null) return null;
+		String name = type.getName();
+		int dot = name.lastIndexOf('.');
+		String mapperName = name.substring(0, dot + 1) + name.substring(dot + 1).replace('$', '_') + "_Mapper";
+		try {
+			Object mapper = Class.forName(mapperName, true, type.getClassLoader()).getDeclaredConstructor().newInstance();
+			return mapper instanceof EntityMapper ? (EntityMapper<Object>) mapper : null;
+		} catch (ClassNotFoundException e) {
+			return null;
+		} catch (Exception e) {
+			throw new IllegalStateException("Cannot create " + mapperName, e);
+		}
+	}
+
+	private static int indexOf(String[] names, String name) {
+		for (int i = 0; i < names.length; i++) {
+			if (names[i].equals(name)) return i;
+		}
+		return -1;
+	}
+
+	private static Constructor<?> noArgConstructorOf(Class<?> type) {
+		try {
+			Constructor<?> constructor = type.getDeclaredConstructor();
+			constructor.setAccessible(true);
+			return constructor;
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	private static Class<?> elementTypeOf(Field field) {
+		com.kas.androidsqlite.Relation relation = field.getAnnotation(com.kas.androidsqlite.Relation.class);
+		if (relation != null) return relation.value();
+		Type generic = field.getGenericType();
+		if (generic instanceof ParameterizedType) {
+			Type[] args = ((ParameterizedType) generic).getActualTypeArguments();
+			if (args.length == 1 && args[0] instanceof Class) return (Class<?>) args[0];
+		}
+		return null;
+	}
+
+	private static Object read(Field field, Object entity) {
+		try {
+			return field.get(entity);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException("Cannot read " + field, e);
+		}
+	}
+
+	/**
+	 * How a column value is stored in its field.
+	 */
+	enum ColumnType {
+		INT, LONG, SHORT, BYTE, FLOAT, DOUBLE, BOOLEAN, CHAR, STRING, BYTES, DATE, ENUM, OTHER;
+
+		static ColumnType of(Class<?> type) {
+			if (type == int.class || type == Integer.class) return INT;
+			if (type == long.class || type == Long.class) return LONG;
+			if (type == short.class || type == Short.class) return SHORT;
+			if (type == byte.class || type == Byte.class) return BYTE;
+			if (type == float.class || type == Float.class) return FLOAT;
+			if (type == double.class || type == Double.class) return DOUBLE;
+			if (type == boolean.class || type == Boolean.class) return BOOLEAN;
+			if (type == char.class || type == Character.class) return CHAR;
+			if (type == String.class) return STRING;
+			if (type == byte[].class) return BYTES;
+			// subclasses like java.sql.Timestamp are left to Gson
+			if (type == java.util.Date.class) return DATE;
+			if (type.isEnum()) return ENUM;
+			return OTHER;
+		}
+
+		/**
+		 * Converts a number to the boxed type of this column, or returns otherwise if this is not a numeric column.
+		 */
+		Object convert(Number number, Object otherwise) {
+			switch (this) {
+			case INT: return Integer.valueOf(number.intValue());
+			case LONG: return Long.valueOf(number.longValue());
+			case SHORT: return Short.valueOf(number.shortValue());
+			case BYTE: return Byte.valueOf(number.byteValue());
+			case FLOAT: return Float.valueOf(number.floatValue());
+			case DOUBLE: return Double.valueOf(number.doubleValue());
+			default: return otherwise;
+			}
+		}
+	}
+
+	/**
+	 * A scalar field stored in a column with the same name, or the name given by its
+	 * {@link com.kas.androidsqlite.Column} annotation.
+	 */
+	static final class Column {
+		final Field field;
+		/** the name of the column */
+		final String name;
+		final ColumnType type;
+		/** true if the field is a primitive and so can never hold null */
+		final boolean primitive;
+		/** the constants of an enum field, null for other fields */
+		final Enum<?>[] constants;
+		/** the position of the field in the mapper's fields, -1 if the entity has no mapper */
+		final int slot;
+		/** set once by the metadata, after it knows that the mapper has all the fields */
+		private EntityMapper<Object> mapper;
+
+		Column(Field field, String name, int slot) {
+			this.field = field;
+			this.name = name;
+			this.slot = slot;
+			this.type = ColumnType.of(field.getType());
+			this.primitive = field.getType().isPrimitive();
+			this.constants = type == ColumnType.ENUM ? (Enum<?>[]) field.getType().getEnumConstants() : null;
+		}
+
+		Object get(Object entity) {
+			if (mapper != null) return mapper.get(entity, slot);
+			return read(field, entity);
+		}
+
+		/**
+		 * Sets the field. The value must be of the type of the field.
+		 */
+		void set(Object entity, Object value) {
+			if (mapper != null) {
+				mapper.set(entity, slot, value);
+				return;
+			}
+			try {
+				field.set(entity, value);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException("Cannot set " + field, e);
+			}
+		}
+	}
+
+	/**
+	 * A list field filled from the table of its element class. The element class must have a property named as
+	 * the owner class that holds the owner id.
+	 */
+	static final class Relation {
+		final Field field;
+		final String name;
+		/** The element class of the list or null if it can't be resolved from the declaration. */
+		final Class<?> elementType;
+
+		Relation(Field field, Class<?> elementType) {
+			this.field = field;
+			this.name = field.getName();
+			this.elementType = elementType;
+		}
+
+		Object get(Object entity) {
+			return read(field, entity);
+		}
+
+		EntityMetadata element() {
+			return elementType == null ? null : EntityMetadata.of(elementType);
+		}
+	}
+}
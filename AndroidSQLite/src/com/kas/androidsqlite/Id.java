@@ -0,0 +1,20 @@
+package com.kas.androidsqlite;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the primary key of an entity whose primary key is not named id. Replaces passing IdPropertyName and
+ * isAutoIncrement to every call.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Id {
+
+	/**
+	 * True if the database assigns the id when the entity is added, false if the entity comes with its own id.
+	 */
+	boolean autoIncrement() default true;
+}
@@ -0,0 +1,124 @@
+package com.kas.androidsqlite;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The entities loaded in one unit of work, by class and id, so that a row that is read more than once is mapped into
+ * the same instance. The first instance loaded for an id is kept; rows read after it are not mapped again.
+ */
+final class IdentityMap {
+
+	private final Map<Class<?>, Map<String, Object>> entities = new HashMap<Class<?>, Map<String, Object>>();
+	/** the column values of every entity as they were read, to find the ones that changed */
+	private final Map<Object, Object[]> snapshots = new IdentityHashMap<Object, Object[]>();
+	/** entities whose list fields have been loaded */
+	private final Map<Object, Boolean> withRelations = new IdentityHashMap<Object, Boolean>();
+	/** number of times the unit of work was started on this thread and not ended yet */
+	int depth = 1;
+
+	/**
+	 * Returns the instance loaded for the id, or null if there is none.
+	 */
+	Object get(Class<?> type, Object id) {
+		if (id == null) return null;
+		Map<String, Object> ofType = entities.get(type);
+		return ofType == null ? null : ofType.get(String.valueOf(id));
+	}
+
+	/**
+	 * Returns the instance already loaded with the id of the passed entity, or keeps the passed entity if there is none.
+	 */
+	Object intern(Class<?> type, Object id, Object entity) {
+		if (id == null) return entity;
+		Map<String, Object> ofType = entities.get(type);
+		if (ofType == null) {
+			ofType = new HashMap<String, Object>();
+			entities.put(type, ofType);
+		}
+		String key = String.valueOf(id);
+		Object loaded = ofType.get(key);
+		if (loaded != null) return loaded;
+		ofType.put(key, entity);
+		takeSnapshot(EntityMetadata.of(type), entity);
+		return entity;
+	}
+
+	/**
+	 * Returns the column values of the entity as they were read or last written, in the order of the metadata's
+	 * columns, or null if the entity is not tracked.
+	 */
+	Object[] snapshot(Object entity) {
+		return snapshots.get(entity);
+	}
+
+	void takeSnapshot(EntityMetadata metadata, Object entity) {
+		Object[] values = new Object[metadata.columns.length];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = snapshotValue(metadata.columns[i], metadata.columns[i].get(entity));
+		}
+		snapshots.put(entity, values);
+	}
+
+	/**
+	 * @return true if the column value is the same as its snapshot
+	 */
+	static boolean same(EntityMetadata.Column column, Object snapshot, Object value) {
+		value = snapshotValue(column, value);
+		if (snapshot instanceof byte[] && value instanceof byte[]) return Arrays.equals((byte[]) snapshot, (byte[]) value);
+		return snapshot == null ? value == null : snapshot.equals(value);
+	}
+
+	private static Object snapshotValue(EntityMetadata.Column column, Object value) {
+		if (value == null) return null;
+		// objects that can be changed in place are copied, or kept as what is written for them
+		switch (column.type) {
+		case BYTES:
+			return ((byte[]) value).clone();
+		case DATE:
+			return Long.valueOf(((Date) value).getTime());
+		case OTHER:
+			return String.valueOf(value);
+		default:
+			return value;
+		}
+	}
+
+	boolean hasRelations(Object entity) {
+		return withRelations.containsKey(entity);
+	}
+
+	/**
+	 * @return true if the list fields of the entity were not marked as loaded before
+	 */
+	boolean markRelationsLoaded(Object entity) {
+		return withRelations.put(entity, Boolean.TRUE) == null;
+	}
+
+	/**
+	 * Forgets the entity with the id, so that it is read again the next time.
+	 */
+	void remove(Class<?> type, Object id) {
+		Map<String, Object> ofType = entities.get(type);
+		if (ofType == null || id == null) return;
+		Object removed = ofType.remove(String.valueOf(id));
+		if (removed == null) return;
+		withRelations.remove(removed);
+		snapshots.remove(removed);
+	}
+
+	/**
+	 * Forgets all the entities of the class.
+	 */
+	void remove(Class<?> type) {
+		Map<String, Object> ofType = entities.remove(type);
+		if (ofType == null) return;
+		for (Object removed : ofType.values()) {
+			withRelations.remove(removed);
+			snapshots.remove(removed);
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package com.kas.androidsqlite;
+
+import java.util.concurrent.Executor;
+
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Runs the callbacks of an {@link AsyncDatabaseContext} on the main thread of the app, to be passed to its constructor.
+ * @ForExample <pre>
+ * <code>
+ * AsyncDatabaseContext async = new AsyncDatabaseContext(databaseContext, 3, new MainThreadExecutor());
+ * </code>
+ * </pre>
+ */
+public final class MainThreadExecutor implements Executor {
+
+	private final Handler handler;
+
+	public MainThreadExecutor() {
+		this(Looper.getMainLooper());
+	}
+
+	/**
+	 * @param looper the Looper of the thread the callbacks run on
+	 */
+	public MainThreadExecutor(Looper looper) {
+		handler = new Handler(looper);
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		handler.post(command);
+	}
+}
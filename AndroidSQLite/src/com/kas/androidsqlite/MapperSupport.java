@@ -0,0 +1,70 @@
+package com.kas.androidsqlite;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+
+import com.google.gson.Gson;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Reads the column types that take more than a single cursor call, the same way for generated mappers and for
+ * reflection. Only meant to be called by generated mappers.
+ */
+public final class MapperSupport {
+
+	/** Only used for fields of types that the cursor can't read natively. */
+	private static final Gson GSON = new Gson();
+
+	private MapperSupport() {
+	}
+
+	/**
+	 * Booleans have always been written as "true"/"false", 1 is accepted as well.
+	 */
+	public static boolean readBoolean(SqlCursor cursor, int index) {
+		String bool = cursor.getString(index);
+		return Boolean.parseBoolean(bool) || "1".equals(bool);
+	}
+
+	/**
+	 * Dates are written as milliseconds since 1970, older records may have them as the text of Date.toString().
+	 */
+	public static Date readDate(SqlCursor cursor, int index) {
+		if (cursor.getType(index) == SqlCursor.FIELD_TYPE_INTEGER) return new Date(cursor.getLong(index));
+		String text = cursor.getString(index);
+		try {
+			return new Date(Long.parseLong(text));
+		} catch (NumberFormatException e) {
+		}
+		try {
+			return new SimpleDateFormat("EEE MMM dd HH:mm:ss zzz yyyy", Locale.US).parse(text);
+		} catch (ParseException e) {
+			return GSON.fromJson(new JsonPrimitive(text), Date.class);
+		}
+	}
+
+	/**
+	 * Enums are written by name, older records may have them as their toString().
+	 */
+	public static <E extends Enum<E>> E readEnum(SqlCursor cursor, int index, Class<E> type) {
+		String text = cursor.getString(index);
+		try {
+			return Enum.valueOf(type, text);
+		} catch (IllegalArgumentException e) {
+		}
+		for (E constant : type.getEnumConstants()) {
+			if (constant.toString().equals(text)) return constant;
+		}
+		return GSON.fromJson(new JsonPrimitive(text), type);
+	}
+
+	/**
+	 * Reads a column of a type the cursor can't read natively from its text.
+	 */
+	public static Object readObject(SqlCursor cursor, int index, Class<?> type) {
+		return GSON.fromJson(new JsonPrimitive(cursor.getString(index)), type);
+	}
+}
@@ -0,0 +1,422 @@
+package com.kas.androidsqlite;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Measures the connections of a backend for a {@link DatabaseListener}. Every connection is wrapped, and every call
+ * checks whether a listener is set, so a listener set at any time measures the connections already open; without one
+ * a call costs a volatile read and goes straight to the connection. The measurements go to the operation running on
+ * the current thread, if any.
+ */
+final class MeteredBackend implements SqlBackend {
+
+	static final long DEFAULT_SLOW_QUERY_MILLIS = 100;
+
+	private final SqlBackend backend;
+	private final ThreadLocal<OperationStats> operations = new ThreadLocal<OperationStats>();
+	private volatile DatabaseListener listener;
+	private volatile long slowQueryNanos = DEFAULT_SLOW_QUERY_MILLIS * 1000000;
+
+	MeteredBackend(SqlBackend backend) {
+		this.backend = backend;
+	}
+
+	@Override
+	public SqlConnection open() {
+		return new MeteredConnection(this, backend.open());
+	}
+
+	@Override
+	public SqlConnection openReadOnly() {
+		return new MeteredConnection(this, backend.openReadOnly());
+	}
+
+	@Override
+	public void close() {
+		backend.close();
+	}
+
+	void setListener(DatabaseListener listener) {
+		this.listener = listener;
+	}
+
+	DatabaseListener getListener() {
+		return listener;
+	}
+
+	boolean isEnabled() {
+		return listener != null;
+	}
+
+	/**
+	 * @param millis queries slower than this are reported with their plan, negative to report none
+	 */
+	void setSlowQueryThreshold(long millis) {
+		slowQueryNanos = millis < 0 ? -1 : millis * 1000000;
+	}
+
+	long getSlowQueryThreshold() {
+		return slowQueryNanos < 0 ? -1 : slowQueryNanos / 1000000;
+	}
+
+	/**
+	 * Starts measuring an operation on the current thread, unless no listener is set or an operation is already
+	 * measured, which the new one is then part of.
+	 * @return the stats of the started operation, to be passed to {@link #end}, or null
+	 */
+	OperationStats begin(String operation) {
+		if (listener == null || operations.get() != null) return null;
+		OperationStats stats = new OperationStats(operation);
+		operations.set(stats);
+		return stats;
+	}
+
+	void end(OperationStats stats) {
+		operations.remove();
+		stats.finish();
+		DatabaseListener current = listener;
+		if (current != null) current.onOperation(stats);
+	}
+
+	/**
+	 * @return the operation measured on the current thread, or null
+	 */
+	OperationStats current() {
+		return listener == null ? null : operations.get();
+	}
+
+	private boolean isSlow(long nanos) {
+		long threshold = slowQueryNanos;
+		return threshold >= 0 && nanos >= threshold;
+	}
+
+	private void reportSlow(String sql, long nanos, List<String> plan) {
+		DatabaseListener current = listener;
+		if (current != null) current.onSlowQuery(sql, nanos, plan);
+	}
+
+	/**
+	 * Returns the plan of the query, run on the connection as it is so that explaining is not measured. The ? are
+	 * left unbound, the plan doesn't depend on their values.
+	 */
+	private static List<String> explain(SqlConnection connection, String sql) {
+		List<String> plan = new ArrayList<String>();
+		try {
+			SqlCursor cursor = connection.query("EXPLAIN QUERY PLAN " + sql, null);
+			try {
+				int detail = cursor.getColumnIndex("detail");
+				while (cursor.moveToNext()) {
+					plan.add(cursor.getString(detail));
+				}
+			} finally {
+				cursor.close();
+			}
+		} catch (RuntimeException e) {
+			return Collections.singletonList("No plan: " + e);
+		}
+		return plan;
+	}
+
+	private static final class MeteredConnection implements SqlConnection {
+		private final MeteredBackend metrics;
+		private final SqlConnection connection;
+
+		MeteredConnection(MeteredBackend metrics, SqlConnection connection) {
+			this.metrics = metrics;
+			this.connection = connection;
+		}
+
+		@Override
+		public SqlCursor query(String sql, String[] args) {
+			if (!metrics.isEnabled()) return connection.query(sql, args);
+			long start = System.nanoTime();
+			SqlCursor cursor = connection.query(sql, args);
+			long compiled = System.nanoTime();
+			OperationStats stats = metrics.current();
+			if (stats != null) {
+				stats.compileNanos += compiled - start;
+				stats.queries++;
+			}
+			return new MeteredCursor(this, cursor, sql, stats, compiled);
+		}
+
+		@Override
+		public SqlStatement compile(String sql) {
+			// wrapped either way, the statement cache keeps it for when a listener is set
+			if (!metrics.isEnabled()) return new MeteredStatement(this, connection.compile(sql), sql);
+			long start = System.nanoTime();
+			SqlStatement statement = connection.compile(sql);
+			OperationStats stats = metrics.current();
+			if (stats != null) stats.compileNanos += System.nanoTime() - start;
+			return new MeteredStatement(this, statement, sql);
+		}
+
+		@Override
+		public void execute(String sql) {
+			if (!metrics.isEnabled()) {
+				connection.execute(sql);
+				return;
+			}
+			long start = System.nanoTime();
+			connection.execute(sql);
+			executed(sql, System.nanoTime() - start, 0);
+		}
+
+		@Override
+		public void beginTransaction() {
+			connection.beginTransaction();
+		}
+
+		@Override
+		public void setTransactionSuccessful() {
+			connection.setTransactionSuccessful();
+		}
+
+		@Override
+		public void endTransaction() {
+			if (!metrics.isEnabled()) {
+				connection.endTransaction();
+				return;
+			}
+			// the commit is where a transaction writes to the disk
+			long start = System.nanoTime();
+			connection.endTransaction();
+			OperationStats stats = metrics.current();
+			if (stats != null) stats.executeNanos += System.nanoTime() - start;
+		}
+
+		@Override
+		public boolean inTransaction() {
+			return connection.inTransaction();
+		}
+
+		@Override
+		public boolean enableWriteAheadLogging() {
+			return connection.enableWriteAheadLogging();
+		}
+
+		@Override
+		public void disableWriteAheadLogging() {
+			connection.disableWriteAheadLogging();
+		}
+
+		@Override
+		public boolean supportsUpsert() {
+			return connection.supportsUpsert();
+		}
+
+		@Override
+		public boolean isOpen() {
+			return connection.isOpen();
+		}
+
+		@Override
+		public void close() {
+			connection.close();
+		}
+
+		void executed(String sql, long nanos, long rowsWritten) {
+			OperationStats stats = metrics.current();
+			if (stats != null) {
+				stats.executeNanos += nanos;
+				stats.statements++;
+				stats.rowsWritten += rowsWritten;
+			}
+			// right after it ran, the connection is still the caller's
+			if (metrics.isSlow(nanos)) metrics.reportSlow(sql, nanos, explain(connection, sql));
+		}
+	}
+
+	private static final class MeteredStatement implements SqlStatement {
+		private final MeteredConnection connection;
+		private final SqlStatement statement;
+		private final String sql;
+
+		MeteredStatement(MeteredConnection connection, SqlStatement statement, String sql) {
+			this.connection = connection;
+			this.statement = statement;
+			this.sql = sql;
+		}
+
+		@Override
+		public void bindNull(int index) {
+			statement.bindNull(index);
+		}
+
+		@Override
+		public void bindLong(int index, long value) {
+			statement.bindLong(index, value);
+		}
+
+		@Override
+		public void bindDouble(int index, double value) {
+			statement.bindDouble(index, value);
+		}
+
+		@Override
+		public void bindString(int index, String value) {
+			statement.bindString(index, value);
+		}
+
+		@Override
+		public void bindBlob(int index, byte[] value) {
+			statement.bindBlob(index, value);
+		}
+
+		@Override
+		public void clearBindings() {
+			statement.clearBindings();
+		}
+
+		@Override
+		public void execute() {
+			if (!connection.metrics.isEnabled()) {
+				statement.execute();
+				return;
+			}
+			long start = System.nanoTime();
+			statement.execute();
+			connection.executed(sql, System.nanoTime() - start, 0);
+		}
+
+		@Override
+		public long executeInsert() {
+			if (!connection.metrics.isEnabled()) return statement.executeInsert();
+			long start = System.nanoTime();
+			long id = statement.executeInsert();
+			connection.executed(sql, System.nanoTime() - start, id == -1 ? 0 : 1);
+			return id;
+		}
+
+		@Override
+		public int executeUpdateDelete() {
+			if (!connection.metrics.isEnabled()) return statement.executeUpdateDelete();
+			long start = System.nanoTime();
+			int changed = statement.executeUpdateDelete();
+			connection.executed(sql, System.nanoTime() - start, changed);
+			return changed;
+		}
+
+		@Override
+		public long simpleQueryForLong() {
+			if (!connection.metrics.isEnabled()) return statement.simpleQueryForLong();
+			long start = System.nanoTime();
+			long value = statement.simpleQueryForLong();
+			connection.executed(sql, System.nanoTime() - start, 0);
+			return value;
+		}
+
+		@Override
+		public void close() {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Counts the time spent in moveToNext as execute time, SQLite runs the query while stepping to the next row, and
+	 * the time between two moveToNext as map time. The plan of a slow query is read as soon as it is slow, while
+	 * stepping: by the time an iterator closes its cursor the connection may be back in the reader pool.
+	 */
+	private static final class MeteredCursor implements SqlCursor {
+		private final MeteredConnection connection;
+		private final SqlCursor cursor;
+		private final String sql;
+		private final OperationStats stats;
+		private long executeNanos;
+		private long mapNanos;
+		private long rows;
+		private long lastStep;
+		private List<String> plan;
+		private boolean closed;
+
+		MeteredCursor(MeteredConnection connection, SqlCursor cursor, String sql, OperationStats stats, long opened) {
+			this.connection = connection;
+			this.cursor = cursor;
+			this.sql = sql;
+			this.stats = stats;
+			this.lastStep = opened;
+		}
+
+		@Override
+		public boolean moveToNext() {
+			long start = System.nanoTime();
+			mapNanos += start - lastStep;
+			boolean moved = cursor.moveToNext();
+			lastStep = System.nanoTime();
+			executeNanos += lastStep - start;
+			if (moved) rows++;
+			if (plan == null && connection.metrics.isSlow(executeNanos)) {
+				plan = explain(connection.connection, sql);
+				lastStep = System.nanoTime();
+			}
+			return moved;
+		}
+
+		@Override
+		public int getColumnIndex(String name) {
+			return cursor.getColumnIndex(name);
+		}
+
+		@Override
+		public boolean isNull(int index) {
+			return cursor.isNull(index);
+		}
+
+		@Override
+		public String getString(int index) {
+			return cursor.getString(index);
+		}
+
+		@Override
+		public int getInt(int index) {
+			return cursor.getInt(index);
+		}
+
+		@Override
+		public long getLong(int index) {
+			return cursor.getLong(index);
+		}
+
+		@Override
+		public short getShort(int index) {
+			return cursor.getShort(index);
+		}
+
+		@Override
+		public float getFloat(int index) {
+			return cursor.getFloat(index);
+		}
+
+		@Override
+		public double getDouble(int index) {
+			return cursor.getDouble(index);
+		}
+
+		@Override
+		public byte[] getBlob(int index) {
+			return cursor.getBlob(index);
+		}
+
+		@Override
+		public int getType(int index) {
+			return cursor.getType(index);
+		}
+
+		@Override
+		public void close() {
+			cursor.close();
+			if (closed) return;
+			closed = true;
+			// the last row is mapped before the cursor is closed
+			mapNanos += System.nanoTime() - lastStep;
+			if (stats != null) {
+				stats.executeNanos += executeNanos;
+				stats.mapNanos += mapNanos;
+				stats.rowsRead += rows;
+			}
+			if (plan != null) connection.metrics.reportSlow(sql, executeNanos, plan);
+		}
+	}
+}
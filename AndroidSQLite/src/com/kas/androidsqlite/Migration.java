@@ -0,0 +1,127 @@
+package com.kas.androidsqlite;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * One step that brings an installed database from the previous version to {@link #getVersion()}, instead of copying
+ * the whole database from the assets again. Extend it to write the step in Java, or use {@link #sql} or
+ * {@link #asset} for steps that are plain SQL.
+ * @ForExample <pre>
+ * <code>
+ * new Migration(4) {
+ *	public void migrate(Context context, SQLiteDatabase database) {
+ *		database.execSQL("UPDATE Product SET Price = Price * 1.1");
+ *	}
+ * };
+ * </code>
+ * </pre>
+ */
+public abstract class Migration {
+
+	private final int version;
+
+	/**
+	 * @param version the asset version the database has after this step
+	 */
+	protected Migration(int version) {
+		if (version < 2) throw new IllegalArgumentException("The first migration is to version 2, version 1 is the first database");
+		this.version = version;
+	}
+
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Changes the database. Runs inside a transaction together with the other steps of the same upgrade.
+	 */
+	public abstract void migrate(Context context, SQLiteDatabase database) throws IOException;
+
+	/**
+	 * @return returns a step that runs the passed SQL statements in order.
+	 * @ForExample
+	 * Migration.sql(2, "ALTER TABLE Employee ADD COLUMN Email TEXT");
+	 */
+	public static Migration sql(int version, final String... statements) {
+		return new Migration(version) {
+			@Override
+			public void migrate(Context context, SQLiteDatabase database) {
+				for (String statement : statements) {
+					database.execSQL(statement);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Returns a step that runs the SQL script in the assets, statements separated by ; . Use it to ship only the reference
+	 * rows that changed, for example as INSERT OR REPLACE and DELETE statements, instead of a new database.
+	 * Statements that contain ; themselves, like triggers, are not supported outside of quotes.
+	 * @param path path of the script in the assets folder, for example "migrations/3.sql"
+	 */
+	public static Migration asset(int version, final String path) {
+		return new Migration(version) {
+			@Override
+			public void migrate(Context context, SQLiteDatabase database) throws IOException {
+				InputStream input = context.getAssets().open(path);
+				try {
+					for (String statement : split(new InputStreamReader(input, "UTF-8"))) {
+						database.execSQL(statement);
+					}
+				} finally {
+					input.close();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Splits a script into statements at the ; that are not in quotes, leaving out -- comments.
+	 */
+	static List<String> split(Reader script) throws IOException {
+		List<String> statements = new ArrayList<String>();
+		StringBuilder statement = new StringBuilder();
+		char quote = 0;
+		boolean comment = false;
+		int previous = -1;
+		int c;
+		while ((c = script.read()) != -1) {
+			if (comment) {
+				if (c == '\n') comment = false;
+				continue;
+			}
+			if (quote != 0) {
+				if (c == quote) quote = 0;
+			} else if (c == '\'' || c == '"') {
+				quote = (char) c;
+			} else if (c == '-' && previous == '-') {
+				statement.setLength(statement.length() - 1);
+				comment = true;
+				previous = -1;
+				continue;
+			} else if (c == ';') {
+				add(statements, statement);
+				previous = -1;
+				continue;
+			}
+			statement.append((char) c);
+			previous = c;
+		}
+		add(statements, statement);
+		return statements;
+	}
+
+	private static void add(List<String> statements, StringBuilder statement) {
+		String trimmed = statement.toString().trim();
+		if (trimmed.length() > 0) statements.add(trimmed);
+		statement.setLength(0);
+	}
+}
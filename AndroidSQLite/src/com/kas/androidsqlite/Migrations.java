@@ -0,0 +1,65 @@
+package com.kas.androidsqlite;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * How an installed database is brought up to a newer asset version. If there is a {@link Migration} for every
+ * version between the installed one and the new one, they are run in order on the installed database. If not, the new
+ * database is copied from the assets, and the preserved tables, which hold what the user created, are copied into it
+ * from the installed one.
+ * @ForExample <pre>
+ * <code>
+ * Migrations migrations = new Migrations()
+ *			.add(Migration.sql(2, "ALTER TABLE Employee ADD COLUMN Email TEXT"))
+ *			.add(Migration.asset(3, "migrations/3.sql"))
+ *			.preserveTables("Favorite", "Note");
+ * DatabaseContext databaseContext = new DatabaseContext(context, "data.db", true, 3, migrations, null);
+ * </code>
+ * </pre>
+ */
+public final class Migrations {
+
+	private final Map<Integer, Migration> steps = new TreeMap<Integer, Migration>();
+	private final List<String> preservedTables = new ArrayList<String>();
+
+	/**
+	 * Adds a step. There can be only one step per version.
+	 */
+	public Migrations add(Migration migration) {
+		Integer version = Integer.valueOf(migration.getVersion());
+		if (steps.containsKey(version)) throw new IllegalArgumentException("There is already a migration to version " + version);
+		steps.put(version, migration);
+		return this;
+	}
+
+	/**
+	 * Tables whose rows are kept when the database is replaced by a new one from the assets. Tables that the new
+	 * database doesn't have are created, and only the columns both have are copied.
+	 */
+	public Migrations preserveTables(String... tables) {
+		preservedTables.addAll(Arrays.asList(tables));
+		return this;
+	}
+
+	List<String> getPreservedTables() {
+		return Collections.unmodifiableList(preservedTables);
+	}
+
+	/**
+	 * @return returns the steps from the installed version to the new one in order, or null if one is missing.
+	 */
+	List<Migration> path(int installedVersion, int newVersion) {
+		List<Migration> path = new ArrayList<Migration>();
+		for (int version = installedVersion + 1; version <= newVersion; version++) {
+			Migration step = steps.get(Integer.valueOf(version));
+			if (step == null) return null;
+			path.add(step);
+		}
+		return path;
+	}
+}
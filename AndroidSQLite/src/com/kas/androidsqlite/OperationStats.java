@@ -0,0 +1,103 @@
+package com.kas.androidsqlite;
+
+/**
+ * What one operation of a {@link DatabaseContext} spent its time on, passed to
+ * {@link DatabaseListener#onOperation(OperationStats)}. The times are in nanoseconds.
+ */
+public final class OperationStats {
+
+	private final String operation;
+	private final long start;
+	long totalNanos;
+	long compileNanos;
+	long executeNanos;
+	long mapNanos;
+	long relationLoadNanos;
+	int queries;
+	int statements;
+	long rowsRead;
+	long rowsWritten;
+
+	OperationStats(String operation) {
+		this.operation = operation;
+		this.start = System.nanoTime();
+	}
+
+	void finish() {
+		totalNanos = System.nanoTime() - start;
+	}
+
+	/**
+	 * @return returns the name of the method of DatabaseContext, for example "findAll"
+	 */
+	public String getOperation() {
+		return operation;
+	}
+
+	/**
+	 * @return returns the time from the start to the end of the operation, including waiting for the connection
+	 */
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	/**
+	 * @return returns the time spent compiling statements and queries. Statements found in the statement cache are not compiled again.
+	 */
+	public long getCompileNanos() {
+		return compileNanos;
+	}
+
+	/**
+	 * @return returns the time SQLite spent running the statements and stepping through the rows of the queries
+	 */
+	public long getExecuteNanos() {
+		return executeNanos;
+	}
+
+	/**
+	 * @return returns the time spent reading the rows of the queries into entities
+	 */
+	public long getMapNanos() {
+		return mapNanos;
+	}
+
+	/**
+	 * @return returns the time spent loading the list fields, which includes the compile, execute and map time of their queries
+	 */
+	public long getRelationLoadNanos() {
+		return relationLoadNanos;
+	}
+
+	/**
+	 * @return returns the number of queries run, including the ones that loaded the list fields
+	 */
+	public int getQueries() {
+		return queries;
+	}
+
+	/**
+	 * @return returns the number of INSERT, UPDATE and DELETE statements run
+	 */
+	public int getStatements() {
+		return statements;
+	}
+
+	public long getRowsRead() {
+		return rowsRead;
+	}
+
+	/**
+	 * @return returns the number of rows inserted, updated or deleted
+	 */
+	public long getRowsWritten() {
+		return rowsWritten;
+	}
+
+	@Override
+	public String toString() {
+		return operation + ": " + totalNanos / 1000 + " us (compile " + compileNanos / 1000 + ", execute " + executeNanos / 1000
+				+ ", map " + mapNanos / 1000 + ", relations " + relationLoadNanos / 1000 + "), " + queries + " queries, "
+				+ statements + " statements, " + rowsRead + " rows read, " + rowsWritten + " rows written";
+	}
+}
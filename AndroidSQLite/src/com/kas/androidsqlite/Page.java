@@ -0,0 +1,39 @@
+package com.kas.androidsqlite;
+
+import java.util.List;
+
+/**
+ * One page of records returned by {@link DatabaseContext#page(Object, Object, int, boolean)} or
+ * {@link DatabaseContext#pageByOffset(Object, int, int, boolean)}, with the token to ask for the next page.
+ */
+public final class Page<T> {
+
+	private final List<T> items;
+	private final Object next;
+
+	Page(List<T> items, Object next) {
+		this.items = items;
+		this.next = next;
+	}
+
+	/**
+	 * @return returns the records of this page.
+	 */
+	public List<T> getItems() {
+		return items;
+	}
+
+	/**
+	 * @return returns true if there are more records after this page.
+	 */
+	public boolean hasNext() {
+		return next != null;
+	}
+
+	/**
+	 * @return returns what to pass to get the next page: the id of the last record for page, or the offset of the next page for pageByOffset. null if this is the last page.
+	 */
+	public Object getNext() {
+		return next;
+	}
+}
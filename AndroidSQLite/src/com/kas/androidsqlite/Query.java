@@ -0,0 +1,271 @@
+package com.kas.androidsqlite;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.regex.Pattern;
+
+/**
+ * A where clause with its order and limit, to be passed to {@link DatabaseContext#findAll(Object, Query, boolean)}.
+ * The values are never put in the SQL, they are bound as parameters, so the same query with different values has the
+ * same SQL text and values containing quotes or commas are safe.
+ * @ForExample <pre>
+ * <code>
+ * Query query = Query.where("Department").eq(3)
+ *			.and("Salary").between(1000, 2000)
+ *			.orderBy("Name", true)
+ *			.limit(50).offset(100);
+ * List[Employee] employees = databaseContext.findAll(new Employee(), query, false);
+ * </code>
+ * </pre>
+ */
+public final class Query {
+
+	private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*(\\.[A-Za-z_][A-Za-z0-9_]*)?");
+
+	private final StringBuilder where = new StringBuilder();
+	private final List<String> args = new ArrayList<String>();
+	private final StringBuilder orderBy = new StringBuilder();
+	private int limit = -1;
+	private int offset = -1;
+
+	private Query() {
+	}
+
+	/**
+	 * @return returns a query without a where clause, that matches all the records.
+	 */
+	public static Query all() {
+		return new Query();
+	}
+
+	/**
+	 * @param values the columns (properties) and the values they must equal, a null value matches the records where the column is null
+	 * @return returns a query that matches the records where every column in the map equals its value.
+	 */
+	public static Query matching(Map<String, ?> values) {
+		Query query = new Query();
+		for (Entry<String, ?> entry : values.entrySet()) {
+			Condition condition = query.condition("AND", entry.getKey());
+			if (entry.getValue() == null) condition.isNull();
+			else condition.eq(entry.getValue());
+		}
+		return query;
+	}
+
+	/**
+	 * Starts a query with a condition on the passed column.
+	 * @param column name of the column (property)
+	 */
+	public static Condition where(String column) {
+		return new Query().condition(null, column);
+	}
+
+	/**
+	 * Adds a condition that must be true as well.
+	 * @param column name of the column (property)
+	 */
+	public Condition and(String column) {
+		return condition("AND", column);
+	}
+
+	/**
+	 * Adds a condition where either this or the previous conditions must be true. The previous conditions are put in
+	 * parentheses, so where("A").eq(1).and("B").eq(2).or("C").eq(3) is (A = ? AND B = ?) OR C = ?. The conditions
+	 * added with and() after it must be true together with this one, as SQL binds AND before OR.
+	 * @param column name of the column (property)
+	 */
+	public Condition or(String column) {
+		if (where.length() > 0) where.insert(0, '(').append(')');
+		return condition("OR", column);
+	}
+
+	/**
+	 * Sorts the result by the passed column. Can be called more than once to sort by more columns.
+	 * @param column name of the column (property)
+	 * @param ascending true for ascending, false for descending
+	 */
+	public Query orderBy(String column, boolean ascending) {
+		if (orderBy.length() > 0) orderBy.append(", ");
+		orderBy.append(checkColumn(column)).append(ascending ? " ASC" : " DESC");
+		return this;
+	}
+
+	/**
+	 * @param limit maximum number of records to return
+	 */
+	public Query limit(int limit) {
+		if (limit < 0) throw new IllegalArgumentException("limit must not be negative");
+		this.limit = limit;
+		return this;
+	}
+
+	/**
+	 * @param offset number of matched records to skip
+	 */
+	public Query offset(int offset) {
+		if (offset < 0) throw new IllegalArgumentException("offset must not be negative");
+		this.offset = offset;
+		return this;
+	}
+
+	/**
+	 * @return returns the where clause with ? in place of the values, or null if there is no where clause.
+	 */
+	public String getSelection() {
+		return where.length() == 0 ? null : where.toString();
+	}
+
+	/**
+	 * @return returns the values to bind, in the order of the ? in the selection.
+	 */
+	public String[] getSelectionArgs() {
+		return args.toArray(new String[args.size()]);
+	}
+
+	/**
+	 * @return returns the order by clause, or null if the result is not sorted.
+	 */
+	public String getOrderBy() {
+		return orderBy.length() == 0 ? null : orderBy.toString();
+	}
+
+	/**
+	 * @return returns the limit clause (for example "50 OFFSET 100"), or null if there is no limit and no offset.
+	 */
+	public String getLimit() {
+		if (limit < 0 && offset < 0) return null;
+		String clause = String.valueOf(limit < 0 ? -1 : limit);
+		return offset < 0 ? clause : clause + " OFFSET " + offset;
+	}
+
+	/**
+	 * @return returns the whole SELECT statement on the passed table.
+	 */
+	String toSql(String table, String columns) {
+		StringBuilder sql = new StringBuilder("SELECT ").append(columns == null ? "*" : columns).append(" FROM ").append(table);
+		if (where.length() > 0) sql.append(" WHERE ").append(where);
+		if (orderBy.length() > 0) sql.append(" ORDER BY ").append(orderBy);
+		String limitClause = getLimit();
+		if (limitClause != null) sql.append(" LIMIT ").append(limitClause);
+		return sql.toString();
+	}
+
+	private Condition condition(String connector, String column) {
+		checkColumn(column);
+		if (connector != null && where.length() > 0) where.append(' ').append(connector).append(' ');
+		return new Condition(column);
+	}
+
+	private static String checkColumn(String column) {
+		if (column == null || !IDENTIFIER.matcher(column).matches())
+			throw new IllegalArgumentException("Invalid column name: " + column);
+		return column;
+	}
+
+	/**
+	 * Returns the value the way it is written in the database, dates as milliseconds and enums by name.
+	 */
+	private static String arg(Object value) {
+		if (value == null) throw new IllegalArgumentException("Use isNull() to match null values");
+		if (value instanceof Date) return String.valueOf(((Date) value).getTime());
+		if (value instanceof Enum<?>) return ((Enum<?>) value).name();
+		return String.valueOf(value);
+	}
+
+	/**
+	 * The comparison of a column with one or more values. Every method adds the comparison to the query and
+	 * returns the query.
+	 */
+	public final class Condition {
+
+		private final String column;
+
+		private Condition(String column) {
+			this.column = column;
+		}
+
+		public Query eq(Object value) {
+			return compare("=", value);
+		}
+
+		public Query notEq(Object value) {
+			return compare("<>", value);
+		}
+
+		public Query gt(Object value) {
+			return compare(">", value);
+		}
+
+		public Query ge(Object value) {
+			return compare(">=", value);
+		}
+
+		public Query lt(Object value) {
+			return compare("<", value);
+		}
+
+		public Query le(Object value) {
+			return compare("<=", value);
+		}
+
+		/**
+		 * @param pattern the LIKE pattern, for example "Jo%"
+		 */
+		public Query like(String pattern) {
+			return compare("LIKE", pattern);
+		}
+
+		/**
+		 * Matches values from (and including) from to (and including) to.
+		 */
+		public Query between(Object from, Object to) {
+			where.append(column).append(" BETWEEN ? AND ?");
+			args.add(arg(from));
+			args.add(arg(to));
+			return Query.this;
+		}
+
+		public Query in(Object... values) {
+			List<Object> list = new ArrayList<Object>(values.length);
+			for (Object value : values) {
+				list.add(value);
+			}
+			return in(list);
+		}
+
+		/**
+		 * Matches any of the values. An empty collection matches nothing.
+		 */
+		public Query in(Collection<?> values) {
+			if (values.isEmpty()) {
+				where.append("0");
+				return Query.this;
+			}
+			where.append(column).append(" IN (").append(RelationLoader.placeholders(values.size())).append(')');
+			for (Object value : values) {
+				args.add(arg(value));
+			}
+			return Query.this;
+		}
+
+		public Query isNull() {
+			where.append(column).append(" IS NULL");
+			return Query.this;
+		}
+
+		public Query isNotNull() {
+			where.append(column).append(" IS NOT NULL");
+			return Query.this;
+		}
+
+		private Query compare(String operator, Object value) {
+			where.append(column).append(' ').append(operator).append(" ?");
+			args.add(arg(value));
+			return Query.this;
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package com.kas.androidsqlite;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fixed number of read-only connections used by reads when write-ahead logging is enabled. In WAL mode readers see
+ * the last committed data and never wait for the writer, so reads on different threads run in parallel with each
+ * other and with the writes. The connections are opened the first time they are needed.
+ */
+final class ReaderPool {
+
+	private final SqlBackend backend;
+	private final int size;
+	private final BlockingQueue<SqlConnection> idle;
+	private final List<SqlConnection> all = new ArrayList<SqlConnection>();
+	private boolean closed;
+
+	ReaderPool(SqlBackend backend, int size) {
+		if (size < 1) throw new IllegalArgumentException("The pool needs at least one reader");
+		this.backend = backend;
+		this.size = size;
+		this.idle = new ArrayBlockingQueue<SqlConnection>(size);
+	}
+
+	/**
+	 * Returns an idle reader, opening a new one if there are less than size, or waits for one to be released.
+	 */
+	SqlConnection acquire() {
+		SqlConnection reader = idle.poll();
+		if (reader != null) return reader;
+
+		synchronized (this) {
+			if (closed) throw new IllegalStateException("The reader pool is closed");
+			if (all.size() < size) {
+				reader = backend.openReadOnly();
+				all.add(reader);
+				return reader;
+			}
+		}
+		try {
+			while (true) {
+				reader = idle.poll(100, TimeUnit.MILLISECONDS);
+				if (reader != null) return reader;
+				synchronized (this) {
+					if (closed) throw new IllegalStateException("The reader pool is closed");
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a reader", e);
+		}
+	}
+
+	/**
+	 * Puts the reader back, or closes it if the pool was closed. Both under the lock, so that a reader released while
+	 * close runs is not left open in the pool.
+	 */
+	synchronized void release(SqlConnection reader) {
+		if (closed) {
+			reader.close();
+			return;
+		}
+		idle.offer(reader);
+	}
+
+	/**
+	 * Closes the idle readers now and the others when they are released.
+	 */
+	synchronized void close() {
+		closed = true;
+		SqlConnection reader;
+		while ((reader = idle.poll()) != null) {
+			reader.close();
+		}
+	}
+}
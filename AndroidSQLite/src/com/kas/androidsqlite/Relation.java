@@ -0,0 +1,20 @@
+package com.kas.androidsqlite;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Gives the type of the entities in a list field, for lists declared without a type argument. The table of those
+ * entities refers to this one by a column named after this table.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Relation {
+
+	/**
+	 * The class of the entities in the list.
+	 */
+	Class<?> value();
+}
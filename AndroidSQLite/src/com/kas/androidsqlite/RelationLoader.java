@@ -0,0 +1,154 @@
+package com.kas.androidsqlite;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+
+/**
+ * Fills the list fields of already loaded entities. Instead of querying the child table once per parent, every child
+ * table is queried once per level with <code>WHERE ParentTable IN (...)</code> and the children are grouped by parent
+ * id in memory. The children are then loaded the same way, level by level, until there is nothing left to load.
+ */
+final class RelationLoader {
+
+	/** SQLite's default limit of host parameters in a single statement. */
+	static final int MAX_VARIABLES = 999;
+
+	private final SqlConnection database;
+	private final IdentityMap identities;
+
+	RelationLoader(SqlConnection database) {
+		this(database, null);
+	}
+
+	/**
+	 * @param identities if not null, children that are already in it are not mapped again, and the list fields of an
+	 * entity are loaded only once however many parents it is reached from.
+	 */
+	RelationLoader(SqlConnection database, IdentityMap identities) {
+		this.database = database;
+		this.identities = identities;
+	}
+
+	/**
+	 * Loads the list fields of the passed entities and of all their children.
+	 * @param entities entities of the class described by metadata
+	 */
+	void load(List<?> entities, EntityMetadata metadata) {
+		List<Level> levels = new ArrayList<Level>();
+		levels.add(new Level(metadata, entities));
+
+		while (!levels.isEmpty()) {
+			List<Level> next = new ArrayList<Level>();
+			for (Level level : levels) {
+				next.addAll(loadLevel(level));
+			}
+			levels = next;
+		}
+	}
+
+	private List<Level> loadLevel(Level level) {
+		List<Level> next = new ArrayList<Level>();
+		EntityMetadata metadata = level.metadata;
+		if (metadata.id == null || metadata.relations.length == 0 || level.entities.isEmpty()) return next;
+
+		// parents by id, more than one instance may share the same id
+		LinkedHashMap<String, List<Object>> parents = new LinkedHashMap<String, List<Object>>();
+		for (Object entity : level.entities) {
+			if (identities != null && !identities.markRelationsLoaded(entity)) continue;
+			Object id = metadata.id.get(entity);
+			if (id == null) continue;
+			String key = String.valueOf(id);
+			List<Object> sameId = parents.get(key);
+			if (sameId == null) {
+				sameId = new ArrayList<Object>(1);
+				parents.put(key, sameId);
+			}
+			sameId.add(entity);
+		}
+		if (parents.isEmpty()) return next;
+		String[] ids = parents.keySet().toArray(new String[parents.size()]);
+
+		for (EntityMetadata.Relation relation : metadata.relations) {
+			if (relation.elementType == null) continue;
+
+			HashMap<String, List<Object>> children = new HashMap<String, List<Object>>();
+			List<Object> allChildren = loadChildren(relation.element(), metadata.tableName, ids, children);
+
+			for (Entry<String, List<Object>> entry : parents.entrySet()) {
+				List<Object> ofParent = children.get(entry.getKey());
+				for (Object parent : entry.getValue()) {
+					// every parent gets its own list, like it used to when each parent was queried separately
+					List<Object> list = ofParent == null ? new ArrayList<Object>() : new ArrayList<Object>(ofParent);
+					try {
+						relation.field.set(parent, list);
+					} catch (Exception e) {}
+				}
+			}
+			if (!allChildren.isEmpty()) next.add(new Level(relation.element(), allChildren));
+		}
+		return next;
+	}
+
+	private List<Object> loadChildren(EntityMetadata child, String foreignKey, String[] ids, Map<String, List<Object>> byParent) {
+		List<Object> all = new ArrayList<Object>();
+		for (int from = 0; from < ids.length; from += MAX_VARIABLES) {
+			int count = Math.min(MAX_VARIABLES, ids.length - from);
+			String[] args = new String[count];
+			System.arraycopy(ids, from, args, 0, count);
+
+			SqlCursor cursor = database.query("SELECT * FROM " + child.tableName + " WHERE " + foreignKey + " IN ("
+					+ placeholders(count) + ")", args);
+			try {
+				CursorMapper<Object> mapper = new CursorMapper<Object>(castType(child.type), cursor, identities);
+				int foreignKeyIndex = cursor.getColumnIndex(foreignKey);
+				if (foreignKeyIndex == -1) throw new IllegalArgumentException(child.tableName + " has no column named " + foreignKey);
+				while (cursor.moveToNext()) {
+					Object entity = mapper.map(cursor);
+					String parentId = cursor.getString(foreignKeyIndex);
+					List<Object> siblings = byParent.get(parentId);
+					if (siblings == null) {
+						siblings = new ArrayList<Object>();
+						byParent.put(parentId, siblings);
+					}
+					siblings.add(entity);
+					all.add(entity);
+				}
+			} finally {
+				cursor.close();
+			}
+		}
+		return all;
+	}
+
+	/**
+	 * Returns "?,?,...,?" with the passed number of parameters.
+	 */
+	static String placeholders(int count) {
+		StringBuilder builder = new StringBuilder(count * 2);
+		for (int i = 0; i < count; i++) {
+			if (i > 0) builder.append(',');
+			builder.append('?');
+		}
+		return builder.toString();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Class<Object> castType(Class<?> type) {
+		return (Class<Object>) type;
+	}
+
+	private static final class Level {
+		final EntityMetadata metadata;
+		final List<?> entities;
+
+		Level(EntityMetadata metadata, List<?> entities) {
+			this.metadata = metadata;
+			this.entities = entities;
+		}
+	}
+}
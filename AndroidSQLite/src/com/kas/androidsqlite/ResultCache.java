@@ -0,0 +1,184 @@
+package com.kas.androidsqlite;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * LRU cache of query results of the tables it is enabled for, keyed by the SQL and its arguments. An entry is dropped
+ * when any of the tables it was read from is written to, when its time to live is over, or when the cache holds more
+ * rows than its size; the size is counted in rows rather than entries so that one large result can't hold on to much
+ * more memory than many small ones.
+ */
+final class ResultCache {
+
+	static final int DEFAULT_MAX_ROWS = 2000;
+
+	private final Map<String, Long> timeToLive = new HashMap<String, Long>();
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private int maxRows;
+	private int rows;
+	/** increased by every invalidation, so that a result read before it is not cached after it */
+	private long version;
+	private long hitCount;
+	private long missCount;
+
+	ResultCache(int maxRows) {
+		this.maxRows = maxRows;
+	}
+
+	/**
+	 * @param timeToLiveMillis how long a result stays cached, 0 or less to keep it until the table is written to
+	 */
+	synchronized void enable(String table, long timeToLiveMillis) {
+		timeToLive.put(table, Long.valueOf(timeToLiveMillis));
+	}
+
+	synchronized void disable(String table) {
+		timeToLive.remove(table);
+		invalidate(table);
+	}
+
+	synchronized boolean isEnabled(String table) {
+		return timeToLive.containsKey(table);
+	}
+
+	/**
+	 * Returns a copy of the cached result, or null if it is not cached or has expired.
+	 */
+	synchronized <T> List<T> get(String key) {
+		Entry entry = entries.get(key);
+		if (entry != null && entry.expires && now() - entry.expiresAt >= 0) {
+			remove(key);
+			entry = null;
+		}
+		if (entry == null) {
+			missCount++;
+			return null;
+		}
+		hitCount++;
+		@SuppressWarnings("unchecked")
+		List<T> items = (List<T>) entry.items;
+		return new ArrayList<T>(items);
+	}
+
+	synchronized long version() {
+		return version;
+	}
+
+	/**
+	 * Caches a copy of the result read from the passed tables, unless one of the tables has been written to since
+	 * {@link #version()} returned readVersion.
+	 * @param table the table the time to live is taken from
+	 */
+	synchronized void put(String key, String table, Set<String> tables, List<?> items, long readVersion) {
+		Long ttl = timeToLive.get(table);
+		if (ttl == null || readVersion != version || items.size() + 1 > maxRows) return;
+
+		remove(key);
+		boolean expires = ttl.longValue() > 0;
+		entries.put(key, new Entry(new ArrayList<Object>(items), tables, expires, expires ? now() + ttl.longValue() : 0));
+		rows += items.size() + 1;
+		trim();
+	}
+
+	/**
+	 * Drops the results read from any of the passed tables.
+	 */
+	synchronized void invalidate(Collection<String> tables) {
+		for (String table : tables) {
+			invalidate(table);
+		}
+	}
+
+	private void invalidate(String table) {
+		version++;
+		Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Entry entry = iterator.next().getValue();
+			if (!entry.tables.contains(table)) continue;
+			rows -= entry.items.size() + 1;
+			iterator.remove();
+		}
+	}
+
+	synchronized void setMaxRows(int maxRows) {
+		this.maxRows = maxRows;
+		trim();
+	}
+
+	synchronized int getMaxRows() {
+		return maxRows;
+	}
+
+	synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	synchronized long getMissCount() {
+		return missCount;
+	}
+
+	synchronized void clear() {
+		version++;
+		entries.clear();
+		rows = 0;
+	}
+
+	private void remove(String key) {
+		Entry removed = entries.remove(key);
+		if (removed != null) rows -= removed.items.size() + 1;
+	}
+
+	private void trim() {
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (rows > maxRows && iterator.hasNext()) {
+			rows -= iterator.next().items.size() + 1;
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Returns the table of the entity and, if withRelations, the tables of all the entities in its list fields.
+	 */
+	static Set<String> tablesOf(EntityMetadata metadata, boolean withRelations) {
+		Set<String> tables = new HashSet<String>();
+		addTables(metadata, withRelations, tables);
+		return tables;
+	}
+
+	private static void addTables(EntityMetadata metadata, boolean withRelations, Set<String> tables) {
+		if (!tables.add(metadata.tableName) || !withRelations) return;
+		for (EntityMetadata.Relation relation : metadata.relations) {
+			if (relation.elementType != null) addTables(relation.element(), true, tables);
+		}
+	}
+
+	/**
+	 * Milliseconds from a monotonic clock, the same on and off the device. Compared by difference, its origin is arbitrary.
+	 */
+	private static long now() {
+		return System.nanoTime() / 1000000;
+	}
+
+	private static final class Entry {
+		final List<Object> items;
+		final Set<String> tables;
+		/** false for results that are kept until their tables are written to */
+		final boolean expires;
+		final long expiresAt;
+
+		Entry(List<Object> items, Set<String> tables, boolean expires, long expiresAt) {
+			this.items = items;
+			this.tables = tables;
+			this.expires = expires;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
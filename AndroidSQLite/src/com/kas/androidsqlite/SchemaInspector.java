@@ -0,0 +1,201 @@
+package com.kas.androidsqlite;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compares the tables of the database, read with <code>PRAGMA table_info</code> and <code>PRAGMA index_list</code>,
+ * with the entities. The columns that refer to another table are the ones the list fields are loaded and deleted by,
+ * <code>WHERE Parent IN (...)</code>, and the ones subQuery filters a join table by: the columns named as another
+ * table of the database, read from <code>sqlite_master</code>, so that a join entity passed on its own has its columns
+ * checked without the entities they refer to. Without an index on them every one of those queries scans the whole
+ * table. Join tables are only inspected when their entity is one of the types, nothing else refers to them.
+ */
+final class SchemaInspector {
+
+	private final SqlConnection database;
+	private final Map<String, Table> tables = new HashMap<String, Table>();
+	/** lower case names of the tables and of the indexes in the database */
+	private Set<String> tableNames;
+	private Set<String> indexNames;
+
+	SchemaInspector(SqlConnection database) {
+		this.database = database;
+	}
+
+	/**
+	 * Inspects the entities and the entities in their list fields, at every level.
+	 * @param createMissingIndexes true to create the missing indexes, which needs the writer connection
+	 */
+	SchemaReport inspect(Class<?>[] types, boolean createMissingIndexes) {
+		Map<String, EntityMetadata> entities = new LinkedHashMap<String, EntityMetadata>();
+		List<EntityMetadata> pending = new ArrayList<EntityMetadata>();
+		for (Class<?> type : types) {
+			pending.add(EntityMetadata.of(type));
+		}
+		while (!pending.isEmpty()) {
+			EntityMetadata metadata = pending.remove(0);
+			if (entities.containsKey(key(metadata.tableName))) continue;
+			entities.put(key(metadata.tableName), metadata);
+			for (EntityMetadata.Relation relation : metadata.relations) {
+				if (relation.elementType != null) pending.add(relation.element());
+			}
+		}
+
+		tableNames = names("table");
+		indexNames = names("index");
+
+		// table and column of every reference, in the order they are found
+		Map<String, String[]> references = new LinkedHashMap<String, String[]>();
+		for (EntityMetadata metadata : entities.values()) {
+			for (EntityMetadata.Relation relation : metadata.relations) {
+				if (relation.elementType == null) continue;
+				reference(references, relation.element().tableName, metadata.tableName);
+			}
+			for (EntityMetadata.Column column : metadata.columns) {
+				String name = key(column.name);
+				if (column == metadata.id || !tableNames.contains(name) || name.equals(key(metadata.tableName))) continue;
+				reference(references, metadata.tableName, column.name);
+			}
+		}
+
+		SchemaReport report = new SchemaReport();
+		for (EntityMetadata metadata : entities.values()) {
+			Table table = table(metadata.tableName);
+			if (table == null) {
+				report.missingTables.add(metadata.tableName);
+				continue;
+			}
+			for (EntityMetadata.Column column : metadata.columns) {
+				if (!table.columns.contains(key(column.name))) report.missingColumns.add(metadata.tableName + "." + column.name);
+			}
+		}
+		for (String[] reference : references.values()) {
+			Table table = table(reference[0]);
+			if (table == null) continue;
+			String column = key(reference[1]);
+			if (!table.columns.contains(column)) {
+				String missing = reference[0] + "." + reference[1];
+				if (!report.missingColumns.contains(missing)) report.missingColumns.add(missing);
+				continue;
+			}
+			if (table.indexed.contains(column)) continue;
+			String sql = "CREATE INDEX " + indexName(reference[0] + "_" + reference[1]) + " ON " + reference[0] + " (" + reference[1] + ")";
+			report.missingIndexes.add(sql);
+			if (createMissingIndexes) {
+				database.execute(sql);
+				table.indexed.add(column);
+				report.createdIndexes.add(sql);
+			}
+		}
+		return report;
+	}
+
+	/**
+	 * Returns the name, or the name with a number appended, that no index of the database has yet. An index that
+	 * already has the name may be on other columns, so the name is not taken as proof that the column is indexed.
+	 */
+	private String indexName(String name) {
+		String unique = name;
+		for (int i = 2; indexNames.contains(key(unique)); i++) {
+			unique = name + "_" + i;
+		}
+		indexNames.add(key(unique));
+		return unique;
+	}
+
+	private Set<String> names(String type) {
+		Set<String> names = new HashSet<String>();
+		SqlCursor cursor = database.query("SELECT name FROM sqlite_master WHERE type = ?", new String[] { type });
+		try {
+			while (cursor.moveToNext()) {
+				names.add(key(cursor.getString(0)));
+			}
+		} finally {
+			cursor.close();
+		}
+		return names;
+	}
+
+	private static void reference(Map<String, String[]> references, String table, String column) {
+		String key = key(table) + "." + key(column);
+		if (!references.containsKey(key)) references.put(key, new String[] { table, column });
+	}
+
+	/**
+	 * @return returns the columns and indexes of the table, or null if there is no such table.
+	 */
+	private Table table(String name) {
+		String key = key(name);
+		if (tables.containsKey(key)) return tables.get(key);
+		Table table = readTable(name);
+		tables.put(key, table);
+		return table;
+	}
+
+	private Table readTable(String name) {
+		Table table = new Table();
+		String primaryKey = null;
+		int primaryKeys = 0;
+		SqlCursor cursor = database.query("PRAGMA table_info(" + name + ")", null);
+		try {
+			int nameIndex = cursor.getColumnIndex("name");
+			int pkIndex = cursor.getColumnIndex("pk");
+			while (cursor.moveToNext()) {
+				String column = key(cursor.getString(nameIndex));
+				table.columns.add(column);
+				if (cursor.getInt(pkIndex) > 0) {
+					primaryKey = column;
+					primaryKeys++;
+				}
+			}
+		} finally {
+			cursor.close();
+		}
+		if (table.columns.isEmpty()) return null;
+		// a primary key of more than one column is indexed by its first column, which index_list returns
+		if (primaryKeys == 1) table.indexed.add(primaryKey);
+
+		List<String> indexes = new ArrayList<String>();
+		cursor = database.query("PRAGMA index_list(" + name + ")", null);
+		try {
+			int nameIndex = cursor.getColumnIndex("name");
+			while (cursor.moveToNext()) {
+				indexes.add(cursor.getString(nameIndex));
+			}
+		} finally {
+			cursor.close();
+		}
+		for (String index : indexes) {
+			// only the first column of an index is used to look up a single column
+			cursor = database.query("PRAGMA index_info(" + index + ")", null);
+			try {
+				int seqnoIndex = cursor.getColumnIndex("seqno");
+				int nameIndex = cursor.getColumnIndex("name");
+				while (cursor.moveToNext()) {
+					if (cursor.getInt(seqnoIndex) == 0 && !cursor.isNull(nameIndex)) table.indexed.add(key(cursor.getString(nameIndex)));
+				}
+			} finally {
+				cursor.close();
+			}
+		}
+		return table;
+	}
+
+	private static String key(String name) {
+		return name.toLowerCase(Locale.US);
+	}
+
+	private static final class Table {
+		/** lower case, SQLite compares the names without case */
+		final Set<String> columns = new HashSet<String>();
+		/** the columns that are the first column of an index */
+		final Set<String> indexed = new HashSet<String>();
+	}
+}
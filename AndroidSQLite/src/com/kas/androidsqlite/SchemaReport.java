@@ -0,0 +1,73 @@
+package com.kas.androidsqlite;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What {@link DatabaseContext#inspectSchema(boolean, Class...)} found missing in the database for the entities it
+ * was given.
+ */
+public final class SchemaReport {
+
+	final List<String> missingTables = new ArrayList<String>();
+	final List<String> missingColumns = new ArrayList<String>();
+	final List<String> missingIndexes = new ArrayList<String>();
+	final List<String> createdIndexes = new ArrayList<String>();
+
+	SchemaReport() {
+	}
+
+	/**
+	 * @return returns the tables of the entities that are not in the database.
+	 */
+	public List<String> getMissingTables() {
+		return Collections.unmodifiableList(missingTables);
+	}
+
+	/**
+	 * @return returns the fields, and the columns the list fields are loaded by, that have no column in their table, as Table.Column.
+	 */
+	public List<String> getMissingColumns() {
+		return Collections.unmodifiableList(missingColumns);
+	}
+
+	/**
+	 * @return returns the CREATE INDEX statements for the columns that refer to another table and are not the first column of any index,
+	 * including the ones that were created.
+	 */
+	public List<String> getMissingIndexes() {
+		return Collections.unmodifiableList(missingIndexes);
+	}
+
+	/**
+	 * @return returns the CREATE INDEX statements that were run, empty unless the inspection was asked to create the missing indexes.
+	 */
+	public List<String> getCreatedIndexes() {
+		return Collections.unmodifiableList(createdIndexes);
+	}
+
+	/**
+	 * @return returns true if nothing is missing, or only indexes that were created.
+	 */
+	public boolean isValid() {
+		return missingTables.isEmpty() && missingColumns.isEmpty() && createdIndexes.size() == missingIndexes.size();
+	}
+
+	@Override
+	public String toString() {
+		if (isValid() && missingIndexes.isEmpty()) return "Schema is valid";
+		StringBuilder text = new StringBuilder();
+		append(text, "Missing tables", missingTables);
+		append(text, "Missing columns", missingColumns);
+		append(text, "Missing indexes", missingIndexes);
+		append(text, "Created indexes", createdIndexes);
+		return text.toString();
+	}
+
+	private static void append(StringBuilder text, String title, List<String> items) {
+		if (items.isEmpty()) return;
+		if (text.length() > 0) text.append('\n');
+		text.append(title).append(": ").append(items);
+	}
+}
@@ -0,0 +1,29 @@
+package com.kas.androidsqlite;
+
+/**
+ * Opens the connections a {@link DatabaseContext} runs on. The mapping of the entities and their list fields is
+ * written against the Sql interfaces only, so the same DatabaseContext runs on the Android SQLite database on the device
+ * and on any other SQLite, for example through JDBC on a desktop or server JVM.
+ * @ForExample <pre>
+ * <code>
+ * DatabaseContext dc = new DatabaseContext(new JdbcBackend(new File("data.db")), true);
+ * </code>
+ * </pre>
+ */
+public interface SqlBackend {
+
+	/**
+	 * Opens the connection that all the writes, and the reads when write-ahead logging is disabled, go through.
+	 */
+	SqlConnection open();
+
+	/**
+	 * Opens a connection that is only used for reads, once write-ahead logging is enabled.
+	 */
+	SqlConnection openReadOnly();
+
+	/**
+	 * Releases what the backend holds besides the connections, which are closed by the DatabaseContext before.
+	 */
+	void close();
+}
@@ -0,0 +1,52 @@
+package com.kas.androidsqlite;
+
+/**
+ * A connection to a SQLite database, with the semantics of android.database.sqlite.SQLiteDatabase. Errors are
+ * reported with unchecked exceptions.
+ */
+public interface SqlConnection {
+
+	/**
+	 * Runs a query. The arguments are bound as strings, like SQLiteDatabase.rawQuery does.
+	 * @param args values of the ? in the query, can be null
+	 */
+	SqlCursor query(String sql, String[] args);
+
+	/**
+	 * Compiles a statement to be executed, usually more than once.
+	 */
+	SqlStatement compile(String sql);
+
+	/**
+	 * Executes a single statement that returns no rows, for example a CREATE INDEX.
+	 */
+	void execute(String sql);
+
+	/**
+	 * Begins a transaction. Transactions can be nested; the outermost one is committed when it ends, unless one of them
+	 * ended without {@link #setTransactionSuccessful()}.
+	 */
+	void beginTransaction();
+
+	void setTransactionSuccessful();
+
+	void endTransaction();
+
+	boolean inTransaction();
+
+	/**
+	 * @return false if write-ahead logging is not supported or could not be enabled, for example in a transaction
+	 */
+	boolean enableWriteAheadLogging();
+
+	void disableWriteAheadLogging();
+
+	/**
+	 * @return true if the database supports <code>INSERT ... ON CONFLICT DO UPDATE</code> (SQLite 3.24)
+	 */
+	boolean supportsUpsert();
+
+	boolean isOpen();
+
+	void close();
+}
@@ -0,0 +1,47 @@
+package com.kas.androidsqlite;
+
+/**
+ * The rows of a query, read forward only, with the semantics of android.database.Cursor. The columns are numbered
+ * from 0.
+ */
+public interface SqlCursor {
+
+	int FIELD_TYPE_NULL = 0;
+	int FIELD_TYPE_INTEGER = 1;
+	int FIELD_TYPE_FLOAT = 2;
+	int FIELD_TYPE_STRING = 3;
+	int FIELD_TYPE_BLOB = 4;
+	/** returned by {@link #getType(int)} when the type of the value can't be told, for example before API level 11 */
+	int FIELD_TYPE_UNKNOWN = -1;
+
+	boolean moveToNext();
+
+	/**
+	 * Finds a column by its name, ignoring case.
+	 * @return the index of the column or -1 if the query has no such column
+	 */
+	int getColumnIndex(String name);
+
+	boolean isNull(int index);
+
+	String getString(int index);
+
+	int getInt(int index);
+
+	long getLong(int index);
+
+	short getShort(int index);
+
+	float getFloat(int index);
+
+	double getDouble(int index);
+
+	byte[] getBlob(int index);
+
+	/**
+	 * @return one of the FIELD_TYPE constants
+	 */
+	int getType(int index);
+
+	void close();
+}
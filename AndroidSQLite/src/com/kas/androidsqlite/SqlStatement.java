@@ -0,0 +1,39 @@
+package com.kas.androidsqlite;
+
+/**
+ * A compiled statement, with the semantics of android.database.sqlite.SQLiteStatement. The parameters are numbered
+ * from 1.
+ */
+public interface SqlStatement {
+
+	void bindNull(int index);
+
+	void bindLong(int index, long value);
+
+	void bindDouble(int index, double value);
+
+	void bindString(int index, String value);
+
+	void bindBlob(int index, byte[] value);
+
+	void clearBindings();
+
+	void execute();
+
+	/**
+	 * @return the row id of the inserted row, or -1 if no row was inserted
+	 */
+	long executeInsert();
+
+	/**
+	 * @return the number of rows changed by an UPDATE or DELETE
+	 */
+	int executeUpdateDelete();
+
+	/**
+	 * @return the value of the first column of the first row of a query
+	 */
+	long simpleQueryForLong();
+
+	void close();
+}
@@ -0,0 +1,129 @@
+package com.kas.androidsqlite;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of compiled statements of one connection, keyed by the shape of the statement, for example
+ * "update Employee by id [1,2]". The least recently used statement is closed when the cache is full, and all of them
+ * are closed when the connection changes.
+ */
+final class StatementCache {
+
+	static final int DEFAULT_SIZE = 32;
+
+	private SqlConnection database;
+	private int maxSize;
+	private long hitCount;
+	private long missCount;
+
+	private final LinkedHashMap<String, SqlStatement> statements = new LinkedHashMap<String, SqlStatement>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, SqlStatement> eldest) {
+			if (size() <= maxSize) return false;
+			eldest.getValue().close();
+			return true;
+		}
+	};
+
+	StatementCache(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Returns the cached statement with the passed key with its bindings cleared, or null if it is not cached yet. In
+	 * that case the statement is compiled with {@link #compile}.
+	 * @param database the connection the statement is for. If it is not the connection of the cached statements the
+	 * cache is cleared first.
+	 */
+	synchronized SqlStatement get(SqlConnection database, String key) {
+		if (this.database != database) {
+			clear();
+			this.database = database;
+		}
+		SqlStatement statement = statements.get(key);
+		if (statement == null) {
+			missCount++;
+			return null;
+		}
+		hitCount++;
+		statement.clearBindings();
+		return statement;
+	}
+
+	/**
+	 * Compiles the sql and caches it under the passed key.
+	 */
+	synchronized SqlStatement compile(SqlConnection database, String key, String sql) {
+		if (this.database != database) {
+			clear();
+			this.database = database;
+		}
+		SqlStatement statement = database.compile(sql);
+		if (maxSize > 0) statements.put(key, statement);
+		return statement;
+	}
+
+	/**
+	 * Gives back a statement returned by {@link #get} or {@link #compile}. Statements that didn't fit in the cache are closed.
+	 */
+	synchronized void release(String key, SqlStatement statement) {
+		if (statements.get(key) != statement) statement.close();
+	}
+
+	synchronized void setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+		while (statements.size() > Math.max(maxSize, 0)) {
+			String eldest = statements.keySet().iterator().next();
+			statements.remove(eldest).close();
+		}
+	}
+
+	synchronized int getMaxSize() {
+		return maxSize;
+	}
+
+	synchronized int size() {
+		return statements.size();
+	}
+
+	synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Closes all the cached statements.
+	 */
+	synchronized void clear() {
+		for (SqlStatement statement : statements.values()) {
+			statement.close();
+		}
+		statements.clear();
+		database = null;
+	}
+
+	/**
+	 * Binds a value with the type of the value: numbers as numbers, byte[] as a blob, dates as milliseconds since 1970,
+	 * enums by name and everything else as a string.
+	 */
+	static void bind(SqlStatement statement, int index, Object value) {
+		if (value == null) statement.bindNull(index);
+		else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+			statement.bindLong(index, ((Number) value).longValue());
+		else if (value instanceof Double) statement.bindDouble(index, ((Double) value).doubleValue());
+		// widening 1.1f to double gives 1.100000023841858, go through the decimal representation as before
+		else if (value instanceof Float) statement.bindDouble(index, Double.parseDouble(value.toString()));
+		else if (value instanceof byte[]) statement.bindBlob(index, (byte[]) value);
+		else if (value instanceof Date) statement.bindLong(index, ((Date) value).getTime());
+		else if (value instanceof Enum<?>) statement.bindString(index, ((Enum<?>) value).name());
+		// booleans stay "true"/"false" so that they match the records and the queries written before
+		else statement.bindString(index, String.valueOf(value));
+	}
+}